@@ -1,7 +1,12 @@
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
-import javax.xml.parsers.*;
-import org.w3c.dom.*;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import javax.xml.stream.*;
 
 class Address {
     private String city;
@@ -34,7 +39,11 @@ class Address {
 
     @Override
     public int hashCode() {
-        return Objects.hash(city, street, house, floor);
+        // то же значение, что Objects.hash(city, street, house, floor), но без массива varargs
+        int hash = 31 + Objects.hashCode(city);
+        hash = 31 * hash + Objects.hashCode(street);
+        hash = 31 * hash + Objects.hashCode(house);
+        return 31 * hash + floor;
     }
 
     @Override
@@ -45,105 +54,166 @@ class Address {
 }
 
 abstract class FileParser {
-    public abstract List<Address> parse(String filePath);
-}
+    private final PipelineMetrics.Timer readTimer = new PipelineMetrics.Timer();
+    private long malformedCount;
+    private boolean failed;
+
+    // Передаёт записи потребителю по мере чтения, не накапливая их
+    public abstract void parse(String filePath, Consumer<Address> consumer);
+
+    // Число пропущенных некорректных записей за всё время работы разборщика
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    // Время ожидания данных из openInput (для .gz - вместе с распаковкой) за всё время работы;
+    // чтение файлов, отображённых в память, сюда не попадает
+    public long getReadNanos() {
+        return readTimer.getNanos();
+    }
+
+    // Файл не найден, не читается или не разбирается; записи до ошибки потребитель уже получил
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    protected void reportFailure(String message) {
+        failed = true;
+        System.out.println(message);
+    }
+
+    protected void reportMalformed(String message) {
+        malformedCount++;
+        System.out.println(message);
+    }
 
-class CsvParser extends FileParser {
-    @Override
     public List<Address> parse(String filePath) {
         List<Address> addresses = new ArrayList<>();
+        parse(filePath, addresses::add);
+        return addresses;
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            boolean isFirstLine = true;
-
-            while ((line = br.readLine()) != null) {
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    continue;
-                }
+    // Файлы .gz распаковываются на лету в отдельном потоке
+    protected InputStream openInput(String filePath) throws IOException {
+        InputStream in = new FileInputStream(filePath);
+        return readTimer.wrap(GzipPipeInputStream.isGzip(filePath) ? new GzipPipeInputStream(in) : in);
+    }
+}
 
-                String[] parts = line.split("[,;]");
-                if (parts.length >= 4) {
-                    try {
-                        String city = parts[0].trim().replace("\"", "");
-                        String street = parts[1].trim().replace("\"", "");
-                        String house = parts[2].trim();
-                        int floor = Integer.parseInt(parts[3].trim());
+class CsvParser extends FileParser {
+    // Кодировка всех CSV-файлов, независимо от платформы: в ней их пишут AddressDataGenerator и ReportWriter
+    static final Charset CHARSET = StandardCharsets.UTF_8;
 
-                        addresses.add(new Address(city, street, house, floor));
-                    } catch (NumberFormatException e) {
-                        System.out.println("Пропущена некорректная строка: " + line);
-                    }
-                }
-            }
+    @Override
+    public void parse(String filePath, Consumer<Address> consumer) {
+        try (InputStream in = openInput(filePath)) {
+            parseRecords(new CsvTokenizer(in, CHARSET), true, consumer,
+                    line -> reportMalformed("Пропущена некорректная строка: " + line));
         } catch (FileNotFoundException e) {
-            System.out.println("Файл не найден: " + filePath);
+            reportFailure("Файл не найден: " + filePath);
         } catch (IOException e) {
-            System.out.println("Ошибка чтения файла.");
+            reportFailure("Ошибка чтения файла.");
         }
+    }
 
-        return addresses;
+    // Строки города, улицы и дома создаются только для записей с корректным этажом
+    static void parseRecords(CsvTokenizer tokenizer, boolean skipHeader, Consumer<Address> consumer,
+                             Consumer<String> malformedLines) throws IOException {
+        boolean isFirstLine = skipHeader;
+
+        while (tokenizer.nextRecord()) {
+            if (isFirstLine) {
+                isFirstLine = false;
+                continue;
+            }
+
+            if (tokenizer.isMalformed()) {
+                // незакрытая кавычка захватывает несколько строк файла, в сообщении - только первая
+                malformedLines.accept(tokenizer.line().split("[\r\n]", 2)[0]);
+                continue;
+            }
+            if (tokenizer.fieldCount() < 4) {
+                continue;
+            }
+
+            int floor;
+            try {
+                floor = tokenizer.intField(3);
+            } catch (NumberFormatException e) {
+                malformedLines.accept(tokenizer.line());
+                continue;
+            }
+
+            consumer.accept(new Address(tokenizer.field(0), tokenizer.field(1), tokenizer.field(2), floor));
+        }
     }
 }
 
 class XmlParser extends FileParser {
-    @Override
-    public List<Address> parse(String filePath) {
-        List<Address> addresses = new ArrayList<>();
-
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new File(filePath));
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
 
-            NodeList itemNodes = document.getElementsByTagName("item");
-
-            for (int i = 0; i < itemNodes.getLength(); i++) {
-                Node itemNode = itemNodes.item(i);
+    @Override
+    public void parse(String filePath, Consumer<Address> consumer) {
+        try (InputStream in = new BufferedInputStream(openInput(filePath))) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
 
-                if (itemNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element itemElement = (Element) itemNode;
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT
+                            || !"item".equals(reader.getLocalName())) {
+                        continue;
+                    }
 
                     try {
-                        String city = itemElement.getAttribute("city");
-                        String street = itemElement.getAttribute("street");
-                        String house = itemElement.getAttribute("house");
-                        int floor = Integer.parseInt(itemElement.getAttribute("floor"));
+                        String city = attribute(reader, "city");
+                        String street = attribute(reader, "street");
+                        String house = attribute(reader, "house");
+                        int floor = Integer.parseInt(attribute(reader, "floor"));
 
-                        addresses.add(new Address(city, street, house, floor));
+                        consumer.accept(new Address(city, street, house, floor));
                     } catch (NumberFormatException e) {
-                        System.out.println("Пропущена некорректная XML запись");
+                        reportMalformed("Пропущена некорректная XML запись");
                     }
                 }
+            } finally {
+                reader.close();
             }
         } catch (FileNotFoundException e) {
-            System.out.println("Файл не найден: " + filePath);
+            reportFailure("Файл не найден: " + filePath);
         } catch (IOException e) {
-            System.out.println("Ошибка чтения файла.");
-        } catch (Exception e) {
-            System.out.println("Ошибка при разборе XML файла.");
+            reportFailure("Ошибка чтения файла.");
+        } catch (XMLStreamException e) {
+            // ошибки потребителя (например, нехватка места под временные файлы) не глушатся
+            reportFailure("Ошибка при разборе XML файла.");
         }
+    }
 
-        return addresses;
+    // Отсутствующий атрибут - пустая строка, как у Element.getAttribute
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : "";
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
     }
 }
 
 class StatisticsCalculator {
     public Map<Address, Integer> findDuplicates(List<Address> addresses) {
-        Map<Address, Integer> addressCount = new HashMap<>();
+        Address[] rows = addresses.toArray(new Address[0]);
+        DuplicateCounter counter = new DuplicateCounter();
 
-        for (Address address : addresses) {
-            addressCount.put(address, addressCount.getOrDefault(address, 0) + 1);
+        for (int row = 0; row < rows.length; row++) {
+            Address address = rows[row];
+            counter.add(DuplicateCounter.fingerprint(address), row, stored -> rows[stored].equals(address));
         }
 
         Map<Address, Integer> duplicates = new HashMap<>();
-        for (Map.Entry<Address, Integer> entry : addressCount.entrySet()) {
-            if (entry.getValue() > 1) {
-                duplicates.put(entry.getKey(), entry.getValue());
-            }
-        }
-
+        counter.forEachDuplicate((row, count) -> duplicates.put(rows[row], count));
         return duplicates;
     }
 
@@ -154,26 +224,186 @@ class StatisticsCalculator {
             String city = address.getCity();
             int floor = address.getFloor();
 
-            int[] floors = cityFloorStats.getOrDefault(city, new int[5]);
+            int[] floors = cityFloorStats.get(city);
+            if (floors == null) {
+                floors = new int[5];
+                cityFloorStats.put(city, floors);
+            }
 
             if (floor >= 1 && floor <= 5) {
                 floors[floor - 1]++;
             }
+        }
+
+        return cityFloorStats;
+    }
+
+    public Map<Address, Integer> findDuplicates(AddressStore store) {
+        DuplicateCounter counter = new DuplicateCounter();
 
-            cityFloorStats.put(city, floors);
+        for (int row = 0; row < store.size(); row++) {
+            int current = row;
+            long fingerprint = DuplicateCounter.fingerprint(store.getCityId(row), store.getStreetId(row),
+                    store.getHouseId(row), store.getFloor(row));
+            counter.add(fingerprint, row, stored -> store.sameAddress(stored, current));
+        }
+
+        Map<Address, Integer> duplicates = new HashMap<>();
+        counter.forEachDuplicate((row, count) -> duplicates.put(store.get(row), count));
+        return duplicates;
+    }
+
+    // Оценка числа различных адресов и самых частых повторов в памяти фиксированного размера
+    public ApproximateStatistics approximateStatistics(List<Address> addresses, double distinctError,
+                                                       double frequencyError, int topK) {
+        ApproximateStatistics statistics = new ApproximateStatistics(distinctError, frequencyError, topK);
+        for (Address address : addresses) {
+            statistics.accept(address);
+        }
+        return statistics;
+    }
+
+    // Группировка по номеру города - обращение к массиву, а не к HashMap по строке
+    public Map<String, int[]> calculateFloorStatistics(AddressStore store) {
+        int[][] floorsByCity = new int[store.getCityCount()][5];
+
+        for (int row = 0; row < store.size(); row++) {
+            int floor = store.getFloor(row);
+            if (floor >= 1 && floor <= 5) {
+                floorsByCity[store.getCityId(row)][floor - 1]++;
+            }
+        }
+
+        Map<String, int[]> cityFloorStats = new HashMap<>();
+        for (int cityId = 0; cityId < floorsByCity.length; cityId++) {
+            cityFloorStats.put(store.getCity(cityId), floorsByCity[cityId]);
         }
 
         return cityFloorStats;
     }
 }
 
+// Считает дубликаты и этажность по городам по мере поступления записей,
+// так что разбор файла и подсчёт статистики проходят за один проход
+class StatisticsAccumulator implements Consumer<Address> {
+    private final DuplicateCounter addressCounts = new DuplicateCounter();
+    private final List<Address> distinctAddresses = new ArrayList<>();
+    private final Map<String, int[]> cityFloorStats = new HashMap<>();
+    private final PendingMatcher pending = new PendingMatcher();
+    private final boolean countDuplicates;
+    private long recordCount;
+
+    public StatisticsAccumulator() {
+        this(true);
+    }
+
+    // countDuplicates = false - только этажность, когда дубликаты считаются вне памяти
+    public StatisticsAccumulator(boolean countDuplicates) {
+        this.countDuplicates = countDuplicates;
+    }
+
+    @Override
+    public void accept(Address address) {
+        recordCount++;
+
+        if (countDuplicates) {
+            addCount(address, 1);
+        }
+
+        int[] floors = cityFloorStats.computeIfAbsent(address.getCity(), key -> new int[5]);
+        int floor = address.getFloor();
+        if (floor >= 1 && floor <= 5) {
+            floors[floor - 1]++;
+        }
+    }
+
+    // Добавляет уже посчитанные где-то ещё повторения адреса, этажность при этом не меняется
+    public void addCount(Address address, int count) {
+        pending.address = address;
+        int total = addressCounts.add(DuplicateCounter.fingerprint(address), distinctAddresses.size(), count, pending);
+        if (total == count) {
+            distinctAddresses.add(address);
+        }
+    }
+
+    public void addFloors(String city, int[] floors) {
+        int[] current = cityFloorStats.computeIfAbsent(city, key -> new int[5]);
+        for (int i = 0; i < current.length; i++) {
+            current[i] += floors[i];
+        }
+    }
+
+    public void addRecordCount(long count) {
+        recordCount += count;
+    }
+
+    public void merge(StatisticsAccumulator other) {
+        other.forEachCount(this::addCount);
+        for (Map.Entry<String, int[]> entry : other.cityFloorStats.entrySet()) {
+            addFloors(entry.getKey(), entry.getValue());
+        }
+        recordCount += other.recordCount;
+    }
+
+    // Все различные адреса с числом повторений, в том числе встретившиеся один раз
+    public void forEachCount(ObjIntConsumer<Address> consumer) {
+        addressCounts.forEach((row, count) -> consumer.accept(distinctAddresses.get(row), count));
+    }
+
+    public int getDistinctCount() {
+        return distinctAddresses.size();
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getDuplicateCount() {
+        return addressCounts.duplicateCount();
+    }
+
+    public Map<Address, Integer> getDuplicates() {
+        Map<Address, Integer> duplicates = new HashMap<>();
+        addressCounts.forEachDuplicate((row, count) -> duplicates.put(distinctAddresses.get(row), count));
+        return duplicates;
+    }
+
+    public Map<String, int[]> getFloorStatistics() {
+        return cityFloorStats;
+    }
+
+    // Сравнивает уже учтённый адрес с только что пришедшим, без лямбды на каждую запись
+    private class PendingMatcher implements DuplicateCounter.RowMatcher {
+        Address address;
+
+        @Override
+        public boolean matches(int storedRow) {
+            return distinctAddresses.get(storedRow).equals(address);
+        }
+    }
+}
+
 public class AddressAnalyzer {
     public static void main(String[] args) {
+        if (args.length > 0) {
+            if (!BatchAnalyzer.run(args)) {
+                System.exit(1);
+            }
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
-        StatisticsCalculator statsCalculator = new StatisticsCalculator();
+        // последний полностью загруженный файл - для запросов find и count
+        AddressStore lastStore = null;
+        AddressIndex lastIndex = null;
 
         System.out.println("=== Анализатор адресов ===");
-        System.out.println("Введите путь к файлу (CSV или XML)");
+        System.out.println("Введите путь к файлу (CSV или XML, в том числе сжатый gzip)");
+        System.out.println("Префикс 'ext ' перед путём считает дубликаты через временные файлы на диске");
+        System.out.println("Префикс 'inc ' перед путём к CSV разбирает только строки, дописанные с прошлого раза");
+        System.out.println("Префикс 'approx ' перед путём даёт приближённую статистику в памяти фиксированного размера");
+        System.out.println("После загрузки файла: 'find city=...; street=...; floor=1-3' - адреса по условиям,");
+        System.out.println("'count floor=5' - число подходящих адресов по городам");
         System.out.println("Для выхода нажмите Ctrl+D или введите 'exit'");
 
         while (true) {
@@ -196,39 +426,127 @@ public class AddressAnalyzer {
                     continue;
                 }
 
-                long startTime = System.currentTimeMillis();
-
-                List<Address> addresses = parseFile(input);
+                if (input.startsWith("find ") || input.startsWith("count ")) {
+                    if (lastStore == null) {
+                        System.out.println("Сначала загрузите файл (без префиксов ext, inc и approx)");
+                        continue;
+                    }
+                    if (lastIndex == null) {
+                        long buildStart = System.nanoTime();
+                        lastIndex = new AddressIndex(lastStore);
+                        System.out.printf("Индексы построены за %.3f мс%n", (System.nanoTime() - buildStart) / 1e6);
+                    }
+                    runQuery(lastIndex, input);
+                    continue;
+                }
 
-                if (!addresses.isEmpty()) {
-                    Map<Address, Integer> duplicates = statsCalculator.findDuplicates(addresses);
-                    Map<String, int[]> floorStats = statsCalculator.calculateFloorStatistics(addresses);
+                // загрузка нового файла сбрасывает данные для запросов
+                lastStore = null;
+                lastIndex = null;
 
-                    System.out.println("\n=== РЕЗУЛЬТАТЫ СТАТИСТИКИ ===");
+                if (input.startsWith("inc ")) {
+                    String file = input.substring(4).trim();
+                    if (!IncrementalAnalyzer.isSupported(file)) {
+                        System.out.println("Дописанные строки можно разбирать только в несжатом CSV");
+                        continue;
+                    }
+                    PipelineMetrics metrics = new PipelineMetrics(file);
+                    IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+                    StatisticsAccumulator statistics;
+                    try (PipelineMetrics.Phase phase = metrics.start("разбор новых строк")) {
+                        statistics = analyzer.analyze(file);
+                        phase.records(analyzer.getParsedRecordCount()).malformed(analyzer.getMalformedCount());
+                        phase.part("чтение файла", analyzer.getReadNanos());
+                        phase.part("подсчёт статистики", analyzer.getStatisticsNanos());
+                    }
+                    printReport(metrics, statistics, null);
+                    continue;
+                }
 
-                    System.out.println("\n--- ДУБЛИРУЮЩИЕСЯ ЗАПИСИ ---");
-                    if (duplicates.isEmpty()) {
-                        System.out.println("Дубликаты не найдены");
-                    } else {
-                        for (Map.Entry<Address, Integer> entry : duplicates.entrySet()) {
-                            System.out.println(entry.getKey() + " - повторений: " + entry.getValue());
+                if (input.startsWith("approx ")) {
+                    String file = input.substring(7).trim();
+                    PipelineMetrics metrics = new PipelineMetrics(file);
+                    ApproximateStatistics statistics;
+                    try {
+                        statistics = new ApproximateStatistics(
+                                Double.parseDouble(System.getProperty("addresses.approxError", "0.01")),
+                                Double.parseDouble(System.getProperty("addresses.approxFrequencyError", "0.0001")),
+                                Integer.getInteger("addresses.topK", 10));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Некорректные addresses.approxError, addresses.approxFrequencyError или addresses.topK");
+                        continue;
+                    }
+                    FileParser parser = createParser(file);
+                    if (parser != null) {
+                        PipelineMetrics.Timer counting = new PipelineMetrics.Timer();
+                        try (PipelineMetrics.Phase phase = metrics.start("разбор")) {
+                            parser.parse(file, counting.wrap(statistics));
+                            phase.records(statistics.getRecordCount())
+                                    .malformed(parser.getMalformedCount());
+                            recordRead(phase, parser, file);
+                            phase.part("приближённый подсчёт", counting.getNanos()).records(statistics.getRecordCount());
                         }
                     }
 
-                    System.out.println("\n--- СТАТИСТИКА ПО ЭТАЖАМ ---");
-                    for (Map.Entry<String, int[]> entry : floorStats.entrySet()) {
-                        String city = entry.getKey();
-                        int[] floors = entry.getValue();
+                    if (statistics.getRecordCount() > 0) {
+                        printApproximateStatistics(statistics);
+                    } else {
+                        System.out.println("Файл не содержит данных или произошла ошибка при чтении");
+                    }
+                    metrics.print();
+                    continue;
+                }
 
-                        System.out.printf("%s: 1-этажных: %d, 2-этажных: %d, 3-этажных: %d, 4-этажных: %d, 5-этажных: %d%n",
-                                city, floors[0], floors[1], floors[2], floors[3], floors[4]);
+                boolean external = false;
+                if (input.startsWith("ext ")) {
+                    external = true;
+                    input = input.substring(4).trim();
+                }
+                long memoryBudget = externalMemoryBudget();
+                long expectedMemory = new File(input).length() * EXPECTED_MEMORY_EXPANSION;
+                if (GzipPipeInputStream.isGzip(input)) {
+                    expectedMemory *= GZIP_COMPRESSION_RATIO;
+                }
+                external |= expectedMemory > memoryBudget;
+
+                PipelineMetrics metrics = new PipelineMetrics(input);
+                FileParser parser = createParser(input);
+                if (external) {
+                    StatisticsAccumulator statistics = new StatisticsAccumulator(false);
+                    Map<Address, Integer> duplicates = null;
+                    if (parser != null) {
+                        PipelineMetrics.Timer counting = new PipelineMetrics.Timer();
+                        try (PipelineMetrics.Phase phase = metrics.start("разбор и внешний поиск дубликатов")) {
+                            duplicates = new ExternalDuplicateFinder(memoryBudget)
+                                    .findDuplicates(parser, input, counting.wrap(statistics));
+                            phase.records(statistics.getRecordCount())
+                                    .malformed(parser.getMalformedCount());
+                            recordRead(phase, parser, input);
+                            phase.part("подсчёт этажности", counting.getNanos()).records(statistics.getRecordCount());
+                        }
+                        if (duplicates == null) {
+                            System.out.println("Поиск дубликатов прерван, результаты не выводятся");
+                            metrics.print();
+                            continue;
+                        }
                     }
-                } else {
-                    System.out.println("Файл не содержит данных или произошла ошибка при чтении");
+                    printReport(metrics, statistics, duplicates);
+                    continue;
                 }
 
-                long endTime = System.currentTimeMillis();
-                System.out.println("\nВремя обработки: " + (endTime - startTime) + " мс");
+                AddressStore store = new AddressStore();
+                if (parser != null) {
+                    try (PipelineMetrics.Phase phase = metrics.start("разбор")) {
+                        parser = new SnapshotParser(parser);
+                        parser.parse(input, store);
+                        store.trimToSize();
+                        phase.records(store.size())
+                                .malformed(parser.getMalformedCount());
+                        recordRead(phase, parser, input);
+                    }
+                    lastStore = store;
+                }
+                printReport(metrics, store);
 
             } catch (NoSuchElementException e) {
                 System.out.println("\nЗавершение работы...");
@@ -239,18 +557,179 @@ public class AddressAnalyzer {
         scanner.close();
     }
 
-    private static List<Address> parseFile(String filePath) {
-        FileParser parser;
+    private static void runQuery(AddressIndex index, String input) {
+        boolean count = input.startsWith("count ");
+        AddressQuery query = AddressQuery.parse(input.substring(count ? 6 : 5));
+        if (query == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (count) {
+            Map<String, Integer> counts = index.countByCity(query);
+            long elapsed = System.nanoTime() - start;
+            if (counts.isEmpty()) {
+                System.out.println("Подходящих адресов нет");
+            }
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+            }
+            System.out.printf("Время запроса: %.1f мкс%n", elapsed / 1e3);
+            return;
+        }
+
+        int limit = Math.max(0, Integer.getInteger("addresses.topK", 10));
+        int total = index.count(query);
+        List<Address> addresses = index.select(query, limit);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Найдено адресов: " + total);
+        for (Address address : addresses) {
+            System.out.println(address);
+        }
+        if (total > addresses.size()) {
+            System.out.println("... и ещё " + (total - addresses.size()));
+        }
+        System.out.printf("Время запроса: %.1f мкс%n", elapsed / 1e3);
+    }
+
+    // Чтение файла - отдельным этапом, если его удалось замерить; файлы, отображённые в память,
+    // читаются вперемешку с разбором, и тогда прочитанные байты относятся ко всему этапу
+    static void recordRead(PipelineMetrics.Phase phase, FileParser parser, String file) {
+        long bytes = new File(file).length();
+        if (parser.getReadNanos() > 0) {
+            phase.part("чтение файла", parser.getReadNanos()).bytes(bytes);
+        } else {
+            phase.bytes(bytes);
+        }
+    }
 
-        if (filePath.toLowerCase().endsWith(".csv")) {
-            parser = new CsvParser();
-        } else if (filePath.toLowerCase().endsWith(".xml")) {
-            parser = new XmlParser();
+    // Статистика по загруженным в память адресам считается на всех ядрах (fork-join),
+    // небольшие файлы - одной задачей. Этажи вне 1-5 не теряются, а выводятся отдельно
+    private static void printReport(PipelineMetrics metrics, AddressStore store) {
+        if (store.size() == 0) {
+            System.out.println("Файл не содержит данных или произошла ошибка при чтении");
+            metrics.print();
+            return;
+        }
+
+        ParallelStatisticsCalculator calculator = new ParallelStatisticsCalculator();
+        Map<Address, Integer> duplicates;
+        FloorStatistics floorStatistics;
+        try (PipelineMetrics.Phase phase = metrics.start("подсчёт статистики")) {
+            duplicates = calculator.findDuplicates(store);
+            floorStatistics = calculator.calculateFloorStatistics(store);
+            phase.records(store.size());
+        }
+        try (PipelineMetrics.Phase phase = metrics.start("вывод")) {
+            printStatistics(duplicates, floorStatistics.toCountsMap());
+            long outOfRange = floorStatistics.getOutOfRangeCount();
+            if (outOfRange > 0) {
+                System.out.printf("Записей с этажностью вне диапазона %d-%d (не вошли в статистику по этажам): %d%n",
+                        floorStatistics.getMinFloor(), floorStatistics.getMaxFloor(), outOfRange);
+            }
+            phase.records(duplicates.size());
+        }
+
+        metrics.print();
+    }
+
+    // duplicates == null - дубликаты берутся из statistics
+    private static void printReport(PipelineMetrics metrics, StatisticsAccumulator statistics,
+                                    Map<Address, Integer> duplicates) {
+        if (statistics.getRecordCount() > 0) {
+            Map<String, int[]> floorStats;
+            try (PipelineMetrics.Phase phase = metrics.start("поиск дубликатов")) {
+                if (duplicates == null) {
+                    duplicates = statistics.getDuplicates();
+                }
+                floorStats = statistics.getFloorStatistics();
+                phase.records(statistics.getDistinctCount());
+            }
+            try (PipelineMetrics.Phase phase = metrics.start("вывод")) {
+                printStatistics(duplicates, floorStats);
+                phase.records(duplicates.size());
+            }
         } else {
-            System.out.println("Неподдерживаемый формат файла. Используйте .csv или .xml");
-            return new ArrayList<>();
+            System.out.println("Файл не содержит данных или произошла ошибка при чтении");
+        }
+
+        metrics.print();
+    }
+
+    static void printApproximateStatistics(ApproximateStatistics statistics) {
+        System.out.println("\n=== ПРИБЛИЖЁННАЯ СТАТИСТИКА ===");
+        System.out.println("Всего записей: " + statistics.getRecordCount());
+        System.out.printf("Различных адресов: около %d (погрешность ~%.1f%%)%n",
+                statistics.estimateDistinctCount(), statistics.getDistinctError() * 100);
+
+        System.out.println("\n--- САМЫЕ ЧАСТЫЕ АДРЕСА ---");
+        Map<Address, Long> top = statistics.getTopDuplicates();
+        if (top.isEmpty()) {
+            System.out.println("Дубликаты не найдены");
+        } else {
+            System.out.println("Оценка может быть завышена не больше чем на " + statistics.getFrequencyErrorBound());
+            for (Map.Entry<Address, Long> entry : top.entrySet()) {
+                System.out.println(entry.getKey() + " - повторений: ~" + entry.getValue());
+            }
+        }
+
+        System.out.println("\n--- СТАТИСТИКА ПО ЭТАЖАМ ---");
+        for (Map.Entry<String, int[]> entry : statistics.getFloorStatistics().entrySet()) {
+            int[] floors = entry.getValue();
+            System.out.printf("%s: 1-этажных: %d, 2-этажных: %d, 3-этажных: %d, 4-этажных: %d, 5-этажных: %d%n",
+                    entry.getKey(), floors[0], floors[1], floors[2], floors[3], floors[4]);
+        }
+    }
+
+    // В консоль - сводка с addresses.topK самыми частыми адресами, полный список - в файл addresses.report
+    static void printStatistics(Map<Address, Integer> duplicates, Map<String, int[]> floorStats) {
+        ReportWriter report = new ReportWriter(Math.max(0, Integer.getInteger("addresses.topK", 10)));
+        report.printSummary(duplicates, floorStats);
+
+        String reportFile = System.getProperty("addresses.report");
+        if (reportFile != null && !reportFile.isEmpty()) {
+            try {
+                report.export(duplicates, floorStats, Paths.get(reportFile));
+                System.out.println("\nПолный отчёт записан в " + reportFile);
+            } catch (IOException | InvalidPathException e) {
+                System.out.println("Не удалось записать отчёт: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final long PARALLEL_CSV_THRESHOLD = 8L * 1024 * 1024;
+    private static final int EXPECTED_MEMORY_EXPANSION = 6;
+    // во столько раз текстовые выгрузки адресов обычно сжимаются gzip
+    private static final int GZIP_COMPRESSION_RATIO = 8;
+
+    // Бюджет памяти для подсчёта дубликатов: -Daddresses.memoryBudgetMb или половина кучи
+    private static long externalMemoryBudget() {
+        Long megabytes = Long.getLong("addresses.memoryBudgetMb");
+        if (megabytes != null) {
+            return megabytes * 1024 * 1024;
+        }
+        return Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    static FileParser createParser(String filePath) {
+        boolean gzip = GzipPipeInputStream.isGzip(filePath);
+        String name = filePath.toLowerCase();
+        if (gzip) {
+            name = name.substring(0, name.length() - 3);
+        }
+
+        if (name.endsWith(".csv")) {
+            // сжатый файл нельзя отобразить в память и делить на куски - он читается последовательно
+            if (!gzip && new File(filePath).length() >= PARALLEL_CSV_THRESHOLD) {
+                return new ParallelCsvParser();
+            }
+            return new CsvParser();
+        } else if (name.endsWith(".xml")) {
+            return new XmlParser();
         }
 
-        return parser.parse(filePath);
+        System.out.println("Неподдерживаемый формат файла. Используйте .csv, .xml, .csv.gz или .xml.gz");
+        return null;
     }
 }
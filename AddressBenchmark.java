@@ -0,0 +1,140 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+
+// Замеры разбора и статистики на сгенерированных данных разного размера и с разной долей дубликатов.
+// Как в JMH: сначала прогревочные итерации, затем замеряемые; итерация повторяет операцию,
+// пока не пройдёт заданное время. Выводятся операции и записи в секунду и байты, выделенные
+// за одну операцию (по счётчику выделений текущего потока).
+//
+// Пример: java AddressBenchmark --records 10000,1000000 --duplicates 0,0.1,0.5 --iterations 5
+public class AddressBenchmark {
+    private interface Operation {
+        Object run() throws Exception;
+    }
+
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+
+    private static volatile Object sink;
+
+    private int[] sizes = {10_000, 100_000, 1_000_000};
+    private double[] duplicateRatios = {0.0, 0.1, 0.5};
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long seed = 42;
+
+    public static void main(String[] args) throws Exception {
+        AddressBenchmark benchmark = new AddressBenchmark();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--records":
+                    benchmark.sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--duplicates":
+                    benchmark.duplicateRatios = Arrays.stream(args[i + 1].split(",")).mapToDouble(Double::parseDouble).toArray();
+                    break;
+                case "--warmup":
+                    benchmark.warmupIterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--iterations":
+                    benchmark.iterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    benchmark.seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Неизвестный параметр: " + args[i]);
+                    return;
+            }
+        }
+
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        Path directory = Files.createTempDirectory("address-benchmark");
+        System.out.printf("%-24s %10s %6s %12s %10s %14s %14s%n",
+                "Операция", "Записей", "Дубл.", "опер/с", "±", "записей/с", "байт/опер");
+
+        try {
+            for (int size : sizes) {
+                for (double ratio : duplicateRatios) {
+                    Path csv = directory.resolve("addresses_" + size + "_" + ratio + ".csv");
+                    Path xml = directory.resolve("addresses_" + size + "_" + ratio + ".xml");
+                    new AddressDataGenerator(seed, ratio).writeCsv(csv, size);
+                    new AddressDataGenerator(seed, ratio).writeXml(xml, size);
+
+                    List<Address> addresses = new CsvParser().parse(csv.toString());
+                    StatisticsCalculator calculator = new StatisticsCalculator();
+
+                    measure("CsvParser.parse", size, ratio, () -> new CsvParser().parse(csv.toString()));
+                    measure("XmlParser.parse", size, ratio, () -> new XmlParser().parse(xml.toString()));
+                    measure("findDuplicates", size, ratio, () -> calculator.findDuplicates(addresses));
+                    measure("calculateFloorStatistics", size, ratio, () -> calculator.calculateFloorStatistics(addresses));
+
+                    Files.delete(csv);
+                    Files.delete(xml);
+                }
+            }
+        } finally {
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory)) {
+                for (Path path : leftovers) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private void measure(String name, int records, double ratio, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+
+        double[] throughput = new double[iterations];
+        long allocated = 0;
+        long operations = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] result = iteration(operation);
+            throughput[i] = result[0] * 1e9 / result[1];
+            operations += result[0];
+            allocated += result[2];
+        }
+
+        double mean = Arrays.stream(throughput).average().orElse(0);
+        double deviation = Math.sqrt(Arrays.stream(throughput).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(1, iterations - 1));
+        long bytesPerOperation = allocated < 0 ? -1 : allocated / Math.max(1, operations);
+
+        System.out.printf("%-24s %10d %6.2f %12.3f %10.3f %14.0f %14d%n",
+                name, records, ratio, mean, deviation, mean * records, bytesPerOperation);
+    }
+
+    // {число операций, затраченные наносекунды, выделенные байты}
+    private static long[] iteration(Operation operation) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        long count = 0;
+
+        do {
+            sink = operation.run();
+            count++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+
+        long allocatedAfter = allocatedBytes();
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new long[] {count, elapsed, allocated};
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
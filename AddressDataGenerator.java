@@ -0,0 +1,127 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Random;
+
+// Генератор тестовых адресов в CSV или XML. При одинаковом seed файлы получаются одинаковыми.
+// duplicateRatio - доля записей, повторяющих одну из уже выданных.
+public class AddressDataGenerator {
+    private static final String[] CITIES = {
+            "Москва", "Санкт-Петербург", "Новосибирск", "Екатеринбург", "Казань", "Нижний Новгород",
+            "Челябинск", "Самара", "Омск", "Ростов-на-Дону", "Уфа", "Красноярск", "Воронеж", "Пермь",
+            "Волгоград", "Краснодар", "Саратов", "Тюмень", "Тольятти", "Ижевск", "Барнаул", "Ульяновск",
+            "Иркутск", "Хабаровск", "Ярославль", "Владивосток", "Махачкала", "Томск", "Оренбург", "Кемерово"
+    };
+    private static final String[] STREET_NAMES = {
+            "Ленина", "Советская", "Мира", "Молодёжная", "Центральная", "Школьная", "Садовая", "Лесная",
+            "Набережная", "Октябрьская", "Гагарина", "Пушкина", "Победы", "Заводская", "Полевая",
+            "Комсомольская", "Кирова", "Чехова", "Горького", "Строителей", "Зелёная", "Новая", "Речная"
+    };
+    private static final String[] STREET_KINDS = {"ул.", "пр.", "пер.", "б-р", "ш."};
+    // этажность распределена неравномерно, как в реальном жилом фонде
+    private static final int[] FLOOR_WEIGHTS = {30, 25, 10, 10, 25};
+
+    private final Random random;
+    private final double duplicateRatio;
+    private final String[][] history = new String[4096][];
+    private int generated;
+
+    public AddressDataGenerator(long seed, double duplicateRatio) {
+        this.random = new Random(seed);
+        this.duplicateRatio = duplicateRatio;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: AddressDataGenerator <файл.csv|файл.xml> <число записей> [доля дубликатов] [seed]");
+            return;
+        }
+
+        int records = Integer.parseInt(args[1]);
+        double duplicateRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+        new AddressDataGenerator(seed, duplicateRatio).write(Paths.get(args[0]), records);
+        System.out.println("Записано " + records + " адресов в " + args[0]);
+    }
+
+    public void write(Path file, int records) throws IOException {
+        if (file.toString().toLowerCase().endsWith(".xml")) {
+            writeXml(file, records);
+        } else {
+            writeCsv(file, records);
+        }
+    }
+
+    public void writeCsv(Path file, int records) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            writer.write("city;street;house;floor\n");
+            for (int i = 0; i < records; i++) {
+                String[] address = next();
+                writer.write('"');
+                writer.write(address[0]);
+                writer.write("\";\"");
+                writer.write(address[1]);
+                writer.write("\";");
+                writer.write(address[2]);
+                writer.write(';');
+                writer.write(address[3]);
+                writer.write('\n');
+            }
+        }
+    }
+
+    public void writeXml(Path file, int records) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<root>\n");
+            for (int i = 0; i < records; i++) {
+                String[] address = next();
+                writer.write("<item city=\"" + escapeXml(address[0]) + "\" street=\"" + escapeXml(address[1])
+                        + "\" house=\"" + escapeXml(address[2]) + "\" floor=\"" + address[3] + "\" />\n");
+            }
+            writer.write("</root>\n");
+        }
+    }
+
+    private String[] next() {
+        if (generated > 0 && random.nextDouble() < duplicateRatio) {
+            return history[random.nextInt(Math.min(generated, history.length))];
+        }
+
+        String city = CITIES[skewed(CITIES.length)];
+        String street = STREET_KINDS[random.nextInt(STREET_KINDS.length)] + " "
+                + STREET_NAMES[random.nextInt(STREET_NAMES.length)];
+        String house = String.valueOf(1 + random.nextInt(150));
+        if (random.nextInt(10) == 0) {
+            house += random.nextBoolean() ? "а" : "/" + (1 + random.nextInt(5));
+        }
+
+        String[] address = {city, street, house, String.valueOf(floor())};
+        history[generated % history.length] = address;
+        generated++;
+        return address;
+    }
+
+    // Крупные города встречаются чаще мелких
+    private int skewed(int bound) {
+        double value = random.nextDouble();
+        return (int) (value * value * bound);
+    }
+
+    private int floor() {
+        int roll = random.nextInt(100);
+        for (int i = 0; i < FLOOR_WEIGHTS.length; i++) {
+            roll -= FLOOR_WEIGHTS[i];
+            if (roll < 0) {
+                return i + 1;
+            }
+        }
+        return FLOOR_WEIGHTS.length;
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+    }
+}
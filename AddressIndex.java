@@ -0,0 +1,300 @@
+import java.util.*;
+
+// Индексы по загруженным адресам для повторных запросов без разбора файла заново.
+// Для каждого города и каждой пары город+улица хранится список строк, упорядоченный по этажности,
+// так что условие на диапазон этажей - два двоичных поиска, а не перебор всех записей.
+class AddressIndex {
+    private final AddressStore store;
+    private final Postings all;
+    private final Postings[] byCity;
+    private final Map<Long, Postings> byCityStreet = new HashMap<>();
+
+    public AddressIndex(AddressStore store) {
+        this.store = store;
+        int size = store.size();
+
+        // все строки по возрастанию этажности, при равной этажности - в порядке файла;
+        // номер строки неотрицателен, поэтому знаковый порядок ключей совпадает с порядком этажности,
+        // в том числе для отрицательных этажей (подвалы)
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = (long) store.getFloor(row) << 32 | row;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        this.all = new Postings(store, order);
+
+        // раскладка упорядоченных строк по спискам сохраняет порядок по этажности в каждом из них
+        int[] cityCounts = new int[store.getCityCount()];
+        Map<Long, Integer> pairIds = new HashMap<>();
+        int[] pairOfRow = new int[size];
+        int[] pairCounts = new int[16];
+        for (int row = 0; row < size; row++) {
+            cityCounts[store.getCityId(row)]++;
+            Integer pairId = pairIds.putIfAbsent(pairKey(store.getCityId(row), store.getStreetId(row)), pairIds.size());
+            pairOfRow[row] = pairId != null ? pairId : pairIds.size() - 1;
+            if (pairOfRow[row] == pairCounts.length) {
+                pairCounts = Arrays.copyOf(pairCounts, pairCounts.length * 2);
+            }
+            pairCounts[pairOfRow[row]]++;
+        }
+
+        int[][] cityRows = new int[cityCounts.length][];
+        for (int cityId = 0; cityId < cityRows.length; cityId++) {
+            cityRows[cityId] = new int[cityCounts[cityId]];
+            cityCounts[cityId] = 0;
+        }
+        int[][] pairRows = new int[pairIds.size()][];
+        for (int pairId = 0; pairId < pairRows.length; pairId++) {
+            pairRows[pairId] = new int[pairCounts[pairId]];
+            pairCounts[pairId] = 0;
+        }
+
+        for (int row : order) {
+            int cityId = store.getCityId(row);
+            cityRows[cityId][cityCounts[cityId]++] = row;
+            int pairId = pairOfRow[row];
+            pairRows[pairId][pairCounts[pairId]++] = row;
+        }
+
+        this.byCity = new Postings[cityRows.length];
+        for (int cityId = 0; cityId < cityRows.length; cityId++) {
+            byCity[cityId] = new Postings(store, cityRows[cityId]);
+        }
+        for (Map.Entry<Long, Integer> entry : pairIds.entrySet()) {
+            byCityStreet.put(entry.getKey(), new Postings(store, pairRows[entry.getValue()]));
+        }
+    }
+
+    public AddressStore getStore() {
+        return store;
+    }
+
+    // Номера строк, подходящих под запрос, по возрастанию этажности
+    public int[] find(AddressQuery query) {
+        Postings postings = postings(query);
+        if (postings == null) {
+            return new int[0];
+        }
+
+        int from = postings.lowerBound(query.getMinFloor());
+        int to = postings.upperBound(query.getMaxFloor());
+        int[] rows = new int[Math.max(0, to - from)];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = postings.rows[from + i];
+        }
+        return filterStreet(rows, query);
+    }
+
+    public int count(AddressQuery query) {
+        if (query.getStreet() != null && query.getCity() == null) {
+            return find(query).length;
+        }
+
+        Postings postings = postings(query);
+        return postings == null ? 0 : postings.count(query.getMinFloor(), query.getMaxFloor());
+    }
+
+    // Не больше limit адресов; объекты Address создаются только для них
+    public List<Address> select(AddressQuery query, int limit) {
+        List<Address> addresses = new ArrayList<>();
+        if (query.getStreet() != null && query.getCity() == null) {
+            int[] rows = find(query);
+            for (int i = 0; i < rows.length && i < limit; i++) {
+                addresses.add(store.get(rows[i]));
+            }
+            return addresses;
+        }
+
+        Postings postings = postings(query);
+        if (postings != null) {
+            int to = Math.min(postings.upperBound(query.getMaxFloor()), postings.lowerBound(query.getMinFloor()) + limit);
+            for (int i = postings.lowerBound(query.getMinFloor()); i < to; i++) {
+                addresses.add(store.get(postings.rows[i]));
+            }
+        }
+        return addresses;
+    }
+
+    // Число подходящих записей в каждом городе; города без подходящих записей не попадают в результат
+    public Map<String, Integer> countByCity(AddressQuery query) {
+        Map<String, Integer> counts = new TreeMap<>();
+
+        if (query.getCity() != null || query.getStreet() != null) {
+            for (int row : find(query)) {
+                counts.merge(store.getCity(store.getCityId(row)), 1, Integer::sum);
+            }
+            return counts;
+        }
+
+        for (int cityId = 0; cityId < byCity.length; cityId++) {
+            int count = byCity[cityId].count(query.getMinFloor(), query.getMaxFloor());
+            if (count > 0) {
+                counts.put(store.getCity(cityId), count);
+            }
+        }
+        return counts;
+    }
+
+    // null - под запрос не подходит ни одна запись
+    private Postings postings(AddressQuery query) {
+        if (query.getCity() == null) {
+            return all;
+        }
+
+        int cityId = store.findCityId(query.getCity());
+        if (cityId < 0) {
+            return null;
+        }
+        if (query.getStreet() == null) {
+            return byCity[cityId];
+        }
+
+        int streetId = store.findStreetId(query.getStreet());
+        return streetId < 0 ? null : byCityStreet.get(pairKey(cityId, streetId));
+    }
+
+    // Улица без города: индекса по одной улице нет, строки отбираются перебором
+    private int[] filterStreet(int[] rows, AddressQuery query) {
+        if (query.getStreet() == null || query.getCity() != null) {
+            return rows;
+        }
+
+        int streetId = store.findStreetId(query.getStreet());
+        int count = 0;
+        for (int row : rows) {
+            if (store.getStreetId(row) == streetId) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static long pairKey(int cityId, int streetId) {
+        return (long) cityId << 32 | (streetId & 0xFFFFFFFFL);
+    }
+
+    private static class Postings {
+        final int[] rows;
+        final int[] floors;
+
+        Postings(AddressStore store, int[] rows) {
+            this.rows = rows;
+            this.floors = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                floors[i] = store.getFloor(rows[i]);
+                // двоичный поиск по этажности верен только на упорядоченном списке (проверка при -ea)
+                assert i == 0 || floors[i - 1] <= floors[i] : "строки не упорядочены по этажности";
+            }
+        }
+
+        int count(int minFloor, int maxFloor) {
+            return Math.max(0, upperBound(maxFloor) - lowerBound(minFloor));
+        }
+
+        // первая позиция с этажностью не меньше floor
+        int lowerBound(int floor) {
+            int low = 0;
+            int high = floors.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (floors[middle] < floor) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // первая позиция с этажностью больше floor
+        int upperBound(int floor) {
+            if (floor == Integer.MAX_VALUE) {
+                return floors.length;
+            }
+            return lowerBound(floor + 1);
+        }
+    }
+}
+
+// Условия запроса: город, улица и диапазон этажности; null - условие не задано.
+// Текстовый вид: "city=Москва; street=ул. Ленина; floor=5" или "floor=1-3", части разделяются ';'
+class AddressQuery {
+    private String city;
+    private String street;
+    private int minFloor = Integer.MIN_VALUE;
+    private int maxFloor = Integer.MAX_VALUE;
+
+    public AddressQuery city(String city) {
+        this.city = city;
+        return this;
+    }
+
+    public AddressQuery street(String street) {
+        this.street = street;
+        return this;
+    }
+
+    public AddressQuery floors(int minFloor, int maxFloor) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        return this;
+    }
+
+    public String getCity() { return city; }
+    public String getStreet() { return street; }
+    public int getMinFloor() { return minFloor; }
+    public int getMaxFloor() { return maxFloor; }
+
+    // null - запрос записан с ошибкой, сообщение уже выведено
+    public static AddressQuery parse(String text) {
+        AddressQuery query = new AddressQuery();
+
+        for (String part : text.split(";")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                System.out.println("Ожидается условие вида ключ=значение: " + part);
+                return null;
+            }
+            String key = part.substring(0, equals).trim();
+            String value = part.substring(equals + 1).trim();
+
+            switch (key) {
+                case "city":
+                    query.city(value);
+                    break;
+                case "street":
+                    query.street(value);
+                    break;
+                case "floor":
+                    try {
+                        int dash = value.indexOf('-', 1);
+                        if (dash < 0) {
+                            int floor = Integer.parseInt(value);
+                            query.floors(floor, floor);
+                        } else {
+                            query.floors(Integer.parseInt(value.substring(0, dash).trim()),
+                                    Integer.parseInt(value.substring(dash + 1).trim()));
+                        }
+                    } catch (NumberFormatException e) {
+                        System.out.println("Некорректная этажность: " + value);
+                        return null;
+                    }
+                    break;
+                default:
+                    System.out.println("Неизвестное условие: " + key + " (допустимы city, street, floor)");
+                    return null;
+            }
+        }
+
+        return query;
+    }
+}
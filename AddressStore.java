@@ -0,0 +1,126 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+// Адреса по столбцам: город, улица и дом хранятся как номера в словарях,
+// этажи - в массиве int. Объекты Address создаются только при обращении к записи.
+class AddressStore implements Consumer<Address> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StringDictionary cities = new StringDictionary();
+    private final StringDictionary streets = new StringDictionary();
+    private final StringDictionary houses = new StringDictionary();
+
+    private int[] cityIds = new int[INITIAL_CAPACITY];
+    private int[] streetIds = new int[INITIAL_CAPACITY];
+    private int[] houseIds = new int[INITIAL_CAPACITY];
+    private int[] floors = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public static AddressStore load(FileParser parser, String filePath) {
+        AddressStore store = new AddressStore();
+        parser.parse(filePath, store);
+        store.trimToSize();
+        return store;
+    }
+
+    @Override
+    public void accept(Address address) {
+        add(address.getCity(), address.getStreet(), address.getHouse(), address.getFloor());
+    }
+
+    public void add(String city, String street, String house, int floor) {
+        if (size == floors.length) {
+            grow(Math.max(INITIAL_CAPACITY, size * 2));
+        }
+
+        cityIds[size] = cities.idOf(city);
+        streetIds[size] = streets.idOf(street);
+        houseIds[size] = houses.idOf(house);
+        floors[size] = floor;
+        size++;
+    }
+
+    public int size() { return size; }
+
+    public int getCityId(int row) { return cityIds[row]; }
+    public int getStreetId(int row) { return streetIds[row]; }
+    public int getHouseId(int row) { return houseIds[row]; }
+    public int getFloor(int row) { return floors[row]; }
+
+    public int getCityCount() { return cities.size(); }
+    public int getStreetCount() { return streets.size(); }
+    public int getHouseCount() { return houses.size(); }
+    public String getCity(int cityId) { return cities.get(cityId); }
+    public String getStreet(int streetId) { return streets.get(streetId); }
+    public String getHouse(int houseId) { return houses.get(houseId); }
+    public int findCityId(String city) { return cities.find(city); }
+    public int findStreetId(String street) { return streets.find(street); }
+
+    public Address get(int row) {
+        return new Address(cities.get(cityIds[row]), streets.get(streetIds[row]),
+                houses.get(houseIds[row]), floors[row]);
+    }
+
+    public boolean sameAddress(int row, int otherRow) {
+        return cityIds[row] == cityIds[otherRow]
+                && streetIds[row] == streetIds[otherRow]
+                && houseIds[row] == houseIds[otherRow]
+                && floors[row] == floors[otherRow];
+    }
+
+    // Представление в виде списка для кода, работающего с List<Address>
+    public List<Address> asList() {
+        return new AbstractList<Address>() {
+            @Override
+            public Address get(int index) {
+                Objects.checkIndex(index, size);
+                return AddressStore.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public void trimToSize() {
+        grow(size);
+    }
+
+    private void grow(int capacity) {
+        cityIds = Arrays.copyOf(cityIds, capacity);
+        streetIds = Arrays.copyOf(streetIds, capacity);
+        houseIds = Arrays.copyOf(houseIds, capacity);
+        floors = Arrays.copyOf(floors, capacity);
+    }
+}
+
+class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    // -1, если строки нет в словаре; в отличие от idOf ничего не добавляет
+    public int find(String value) {
+        Integer id = ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    public String get(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
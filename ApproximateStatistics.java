@@ -0,0 +1,249 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+// Приближённая статистика для очень больших файлов: память не зависит от числа адресов.
+// Число различных адресов оценивает HyperLogLog с относительной ошибкой около distinctError
+// (точность ограничена: от 2^MIN_PRECISION до 2^MAX_PRECISION регистров),
+// частоты - Count-Min, который завышает счётчик не больше чем на frequencyError * число записей
+// с вероятностью 1 - failureProbability. Ширина Count-Min - e / frequencyError, но не больше MAX_WIDTH:
+// при 2^18 столбцах и failureProbability = 0.01 таблица занимает 10 МБ, а frequencyError не меньше ~1e-5.
+// Среди кандидатов хранятся только topK * CANDIDATE_FACTOR самых частых адресов.
+// Статистика по этажам точная - её размер зависит только от числа городов.
+// Оценки с одинаковыми параметрами можно объединять (merge), например по файлам или потокам.
+class ApproximateStatistics implements Consumer<Address> {
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+    private static final int CANDIDATE_FACTOR = 4;
+    private static final int MAX_WIDTH = 1 << 18;
+
+    private final double frequencyError;
+    private final int topK;
+
+    private final int precision;
+    private final byte[] registers;
+
+    private final int width;
+    private final long[][] sketch;
+
+    private final Map<Address, Long> candidates = new HashMap<>();
+    private final int candidateCapacity;
+    // нижняя граница наименьшей оценки среди кандидатов; оценки только растут, так что
+    // устаревшее значение лишь заставит пересчитать минимум лишний раз
+    private long minCandidateEstimate;
+
+    private final Map<String, int[]> cityFloorStats = new HashMap<>();
+    private long recordCount;
+
+    public ApproximateStatistics(double distinctError, double frequencyError, int topK) {
+        this(distinctError, frequencyError, 0.01, topK);
+    }
+
+    public ApproximateStatistics(double distinctError, double frequencyError, double failureProbability, int topK) {
+        if (distinctError <= 0 || frequencyError <= 0 || failureProbability <= 0 || failureProbability >= 1 || topK < 1) {
+            throw new IllegalArgumentException("Некорректные параметры приближённой статистики");
+        }
+
+        this.topK = topK;
+
+        // стандартная ошибка HyperLogLog - 1.04 / sqrt(число регистров)
+        double registersNeeded = Math.pow(1.04 / distinctError, 2);
+        int bits = 64 - Long.numberOfLeadingZeros((long) Math.ceil(registersNeeded) - 1);
+        this.precision = Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, bits));
+        this.registers = new byte[1 << precision];
+
+        this.width = (int) Math.min(MAX_WIDTH, Math.ceil(Math.E / frequencyError));
+        this.frequencyError = Math.E / width;
+        int depth = (int) Math.ceil(Math.log(1 / failureProbability));
+        this.sketch = new long[Math.max(1, depth)][width];
+
+        this.candidateCapacity = topK * CANDIDATE_FACTOR;
+    }
+
+    @Override
+    public void accept(Address address) {
+        recordCount++;
+        long fingerprint = DuplicateCounter.fingerprint(address);
+
+        addToRegisters(fingerprint);
+        long estimate = addToSketch(fingerprint, 1);
+        offerCandidate(address, estimate);
+
+        int[] floors = cityFloorStats.get(address.getCity());
+        if (floors == null) {
+            floors = new int[5];
+            cityFloorStats.put(address.getCity(), floors);
+        }
+        int floor = address.getFloor();
+        if (floor >= 1 && floor <= 5) {
+            floors[floor - 1]++;
+        }
+    }
+
+    public void merge(ApproximateStatistics other) {
+        if (other.precision != precision || other.width != width || other.sketch.length != sketch.length) {
+            throw new IllegalArgumentException("Объединять можно только оценки с одинаковыми параметрами");
+        }
+
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+        for (int row = 0; row < sketch.length; row++) {
+            for (int column = 0; column < width; column++) {
+                sketch[row][column] += other.sketch[row][column];
+            }
+        }
+
+        // после сложения таблиц оценки кандидатов пересчитываются по объединённому скетчу
+        Set<Address> merged = new HashSet<>(candidates.keySet());
+        merged.addAll(other.candidates.keySet());
+        candidates.clear();
+        minCandidateEstimate = 0;
+        for (Address address : merged) {
+            offerCandidate(address, estimate(DuplicateCounter.fingerprint(address)));
+        }
+
+        for (Map.Entry<String, int[]> entry : other.cityFloorStats.entrySet()) {
+            int[] floors = cityFloorStats.get(entry.getKey());
+            if (floors == null) {
+                floors = new int[5];
+                cityFloorStats.put(entry.getKey(), floors);
+            }
+            for (int i = 0; i < floors.length; i++) {
+                floors[i] += entry.getValue()[i];
+            }
+        }
+
+        recordCount += other.recordCount;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // Ошибка, которую даёт выбранное число регистров, а не запрошенная: точность ограничена
+    public double getDistinctError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    // Наибольшее завышение оценки частоты при текущем числе записей
+    public long getFrequencyErrorBound() {
+        return (long) Math.ceil(frequencyError * recordCount);
+    }
+
+    public long estimateDistinctCount() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+
+        // на малых количествах точнее линейный подсчёт по пустым регистрам
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public long estimateCount(Address address) {
+        return estimate(DuplicateCounter.fingerprint(address));
+    }
+
+    // Не больше topK адресов с оценкой частоты больше 1, по убыванию оценки
+    public Map<Address, Long> getTopDuplicates() {
+        List<Map.Entry<Address, Long>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        Map<Address, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<Address, Long> entry : entries) {
+            if (top.size() == topK || entry.getValue() <= 1) {
+                break;
+            }
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    public Map<String, int[]> getFloorStatistics() {
+        return cityFloorStats;
+    }
+
+    private void addToRegisters(long fingerprint) {
+        int index = (int) (fingerprint >>> (64 - precision));
+        // единица в конце ограничивает ранг, если все оставшиеся биты нулевые
+        long remaining = (fingerprint << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    // Консервативное обновление: счётчики поднимаются только до новой оценки, а не все подряд.
+    // Оценка по-прежнему не меньше истинной частоты, но завышается заметно реже
+    private long addToSketch(long fingerprint, long count) {
+        long estimate = estimate(fingerprint) + count;
+        for (int row = 0; row < sketch.length; row++) {
+            int column = column(fingerprint, row);
+            if (sketch[row][column] < estimate) {
+                sketch[row][column] = estimate;
+            }
+        }
+        return estimate;
+    }
+
+    private long estimate(long fingerprint) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketch.length; row++) {
+            estimate = Math.min(estimate, sketch[row][column(fingerprint, row)]);
+        }
+        return estimate;
+    }
+
+    // Строки таблицы хешируются двумя половинами отпечатка: h1 + row * h2
+    private int column(long fingerprint, int row) {
+        int hash = (int) fingerprint + row * (int) (fingerprint >>> 32);
+        return (hash & Integer.MAX_VALUE) % width;
+    }
+
+    private void offerCandidate(Address address, long estimate) {
+        if (candidates.containsKey(address)) {
+            candidates.put(address, estimate);
+            return;
+        }
+
+        if (candidates.size() < candidateCapacity) {
+            candidates.put(address, estimate);
+            minCandidateEstimate = candidates.size() == 1 ? estimate : Math.min(minCandidateEstimate, estimate);
+            return;
+        }
+
+        if (estimate <= minCandidateEstimate) {
+            return;
+        }
+
+        Address weakest = null;
+        long weakestEstimate = Long.MAX_VALUE;
+        for (Map.Entry<Address, Long> entry : candidates.entrySet()) {
+            if (entry.getValue() < weakestEstimate) {
+                weakest = entry.getKey();
+                weakestEstimate = entry.getValue();
+            }
+        }
+
+        if (estimate > weakestEstimate) {
+            candidates.remove(weakest);
+            candidates.put(address, estimate);
+            weakestEstimate = estimate;
+            for (long value : candidates.values()) {
+                weakestEstimate = Math.min(weakestEstimate, value);
+            }
+        }
+        minCandidateEstimate = weakestEstimate;
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Вводные абзацы статей для показа в консоли, без браузера. Сразу после поиска prefetch
+// загружает описания первых prefetchCount результатов одним запросом к API, так что при выборе
+// статьи описание обычно уже готово. Описания хранятся в памяти (LRU на capacity статей);
+// если описание ещё загружается, get ждёт тот же запрос, а не отправляет новый.
+// Неудачная загрузка не запоминается и при следующем обращении повторяется; так же и статья,
+// для которой сервер не вернул абзац (её нет или ответ неполный): ожидающие получают "",
+// но при следующем обращении абзац запрашивается снова.
+//
+// Настройки: -Dwiki.extracts.prefetch, -Dwiki.extracts.entries
+class ArticleExtracts {
+    private static ArticleExtracts defaultExtracts;
+
+    private final Map<Integer, CompletableFuture<String>> extracts;
+    private final int prefetchCount;
+    private final WikiSearchClient client;
+    private final SearchDispatcher dispatcher;
+
+    public ArticleExtracts(WikiSearchClient client, SearchDispatcher dispatcher, int prefetchCount, int capacity) {
+        this.client = client;
+        this.dispatcher = dispatcher;
+        this.prefetchCount = prefetchCount;
+        this.extracts = new LinkedHashMap<Integer, CompletableFuture<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<String>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public static synchronized ArticleExtracts getDefault() {
+        if (defaultExtracts == null) {
+            defaultExtracts = new ArticleExtracts(WikiSearchClient.getDefault(), SearchDispatcher.getDefault(),
+                    Integer.getInteger("wiki.extracts.prefetch", WikiSearchClient.DEFAULT_LIMIT),
+                    Integer.getInteger("wiki.extracts.entries", 500));
+        }
+        return defaultExtracts;
+    }
+
+    // Не блокирует; статьи без номера страницы (из выгрузки заголовков) пропускаются
+    public void prefetch(List<SearchItems> items) {
+        Map<Integer, CompletableFuture<String>> pending = new LinkedHashMap<>();
+        synchronized (extracts) {
+            for (int i = 0; i < items.size() && pending.size() < prefetchCount; i++) {
+                int pageId = items.get(i).getPageId();
+                if (pageId > 0 && !extracts.containsKey(pageId)) {
+                    CompletableFuture<String> extract = new CompletableFuture<>();
+                    extracts.put(pageId, extract);
+                    pending.put(pageId, extract);
+                }
+            }
+        }
+        load(pending);
+    }
+
+    // Описание статьи; "" - у статьи нет вводного абзаца. Ошибка загрузки - SearchException
+    public CompletableFuture<String> get(int pageId) {
+        CompletableFuture<String> extract;
+        boolean load = false;
+        synchronized (extracts) {
+            extract = extracts.get(pageId);
+            if (extract == null) {
+                extract = new CompletableFuture<>();
+                extracts.put(pageId, extract);
+                load = true;
+            }
+        }
+
+        if (load) {
+            Map<Integer, CompletableFuture<String>> pending = new HashMap<>();
+            pending.put(pageId, extract);
+            load(pending);
+        }
+        return extract;
+    }
+
+    private void load(Map<Integer, CompletableFuture<String>> pending) {
+        List<Integer> pageIds = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < pageIds.size(); from += WikiSearchClient.MAX_EXTRACTS) {
+            List<Integer> batch = pageIds.subList(from, Math.min(pageIds.size(), from + WikiSearchClient.MAX_EXTRACTS));
+            dispatcher.submit("extracts|" + batch, () -> client.extracts(batch)).whenComplete((found, error) -> {
+                for (int pageId : batch) {
+                    CompletableFuture<String> extract = pending.get(pageId);
+                    if (error == null && found.containsKey(pageId)) {
+                        extract.complete(found.get(pageId));
+                    } else if (error == null) {
+                        synchronized (extracts) {
+                            extracts.remove(pageId, extract);
+                        }
+                        extract.complete("");
+                    } else {
+                        synchronized (extracts) {
+                            extracts.remove(pageId, extract);
+                        }
+                        extract.completeExceptionally(SearchException.from(error));
+                    }
+                }
+            });
+        }
+    }
+}
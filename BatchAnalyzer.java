@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Пакетный режим без диалога: каждый файл разбирается в своём (по возможности виртуальном) потоке,
+// одновременно читается не больше ioLimit файлов. Итоги по каждому файлу выводятся по мере
+// готовности, в конце - общая статистика по всем файлам сразу.
+class BatchAnalyzer {
+    private final int ioLimit;
+    private int failedCount;
+
+    public BatchAnalyzer(int ioLimit) {
+        this.ioLimit = ioLimit;
+    }
+
+    // Аргументы: [--io-limit N] файлы, каталоги или шаблоны вида data/*.csv.
+    // false - аргументы некорректны или хотя бы один файл обработать не удалось
+    public static boolean run(String[] args) {
+        int ioLimit = Runtime.getRuntime().availableProcessors();
+        List<String> patterns = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--io-limit") && i + 1 < args.length) {
+                try {
+                    ioLimit = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    System.out.println("Некорректное значение --io-limit: " + args[i]);
+                    return false;
+                }
+            } else {
+                patterns.add(args[i]);
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        List<String> files = expand(patterns, missing);
+        if (files.isEmpty()) {
+            System.out.println("Не найдено ни одного CSV или XML файла");
+            return false;
+        }
+
+        BatchAnalyzer analyzer = new BatchAnalyzer(ioLimit);
+        analyzer.analyze(files);
+        return analyzer.getFailedCount() == 0 && missing.isEmpty();
+    }
+
+    // Файлы, которые не удалось обработать за последний analyze: неподдерживаемый формат,
+    // ошибка чтения или разбора, исключение или прерывание
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public StatisticsAccumulator analyze(List<String> files) {
+        long startTime = System.currentTimeMillis();
+        Semaphore ioPermits = new Semaphore(ioLimit);
+        Map<Future<FileResult>, String> pending = new HashMap<>();
+        failedCount = 0;
+
+        ExecutorService executor = newExecutor();
+        CompletionService<FileResult> completed = new ExecutorCompletionService<>(executor);
+        try {
+            for (String file : files) {
+                pending.put(completed.submit(() -> analyzeFile(file, ioPermits)), file);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        StatisticsAccumulator total = new StatisticsAccumulator();
+        System.out.println("\n=== ИТОГИ ПО ФАЙЛАМ ===");
+
+        // статистика файла сливается в общую, как только файл готов, и больше не удерживается:
+        // в памяти не копятся результаты всех файлов до конца обработки
+        try {
+            while (!pending.isEmpty()) {
+                Future<FileResult> future = completed.take();
+                String file = pending.remove(future);
+                try {
+                    FileResult result = future.get();
+                    if (result.failed) {
+                        // частичная статистика файла в общую не попадает
+                        failedCount++;
+                        System.out.println(file + ": не удалось обработать файл");
+                        continue;
+                    }
+                    StatisticsAccumulator statistics = result.statistics;
+                    System.out.printf("%s: записей: %d, различных адресов: %d, дублирующихся: %d, некорректных: %d, время: %d мс%n",
+                            file, statistics.getRecordCount(), statistics.getDistinctCount(),
+                            statistics.getDuplicateCount(), result.malformed, result.millis);
+                    total.merge(statistics);
+                } catch (ExecutionException e) {
+                    failedCount++;
+                    System.out.println(file + ": ошибка - " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            failedCount += pending.size();
+            System.out.println("Обработка прервана");
+            return total;
+        }
+
+        System.out.println("\n=== ОБЩАЯ СТАТИСТИКА (" + files.size() + " файлов) ===");
+        if (total.getRecordCount() > 0) {
+            AddressAnalyzer.printStatistics(total.getDuplicates(), total.getFloorStatistics());
+        } else {
+            System.out.println("Файлы не содержат данных или произошла ошибка при чтении");
+        }
+
+        if (failedCount > 0) {
+            System.out.println("\nНе удалось обработать файлов: " + failedCount);
+        }
+
+        long endTime = System.currentTimeMillis();
+        System.out.println("\nВремя обработки: " + (endTime - startTime) + " мс");
+        return total;
+    }
+
+    private static FileResult analyzeFile(String file, Semaphore ioPermits) throws InterruptedException {
+        StatisticsAccumulator statistics = new StatisticsAccumulator();
+        FileParser parser = AddressAnalyzer.createParser(file);
+
+        // этап каждого файла попадает в JFR отдельным событием
+        PipelineMetrics metrics = new PipelineMetrics(file);
+        long malformed = 0;
+        boolean failed = parser == null;
+
+        ioPermits.acquire();
+        try (PipelineMetrics.Phase phase = metrics.start("разбор")) {
+            // без SnapshotParser: снимок держал бы в памяти вторую копию всех адресов файла,
+            // а пакетному режиму нужна только статистика
+            if (parser != null) {
+                PipelineMetrics.Timer counting = new PipelineMetrics.Timer();
+                parser.parse(file, counting.wrap(statistics));
+                malformed = parser.getMalformedCount();
+                failed = parser.hasFailed();
+                AddressAnalyzer.recordRead(phase, parser, file);
+                phase.part("подсчёт статистики", counting.getNanos()).records(statistics.getRecordCount());
+            }
+            phase.records(statistics.getRecordCount()).malformed(malformed);
+        } finally {
+            ioPermits.release();
+        }
+
+        return new FileResult(statistics, malformed, metrics.getTotalNanos() / 1_000_000, failed);
+    }
+
+    // Виртуальные потоки появились в Java 21; на более старых версиях - обычный пул
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Пути без подстановочных символов, которых нет на диске, попадают в missing
+    private static List<String> expand(List<String> patterns, List<String> missing) {
+        Set<String> files = new LinkedHashSet<>();
+
+        for (String pattern : patterns) {
+            Path path = Paths.get(pattern);
+
+            if (Files.isRegularFile(path)) {
+                files.add(pattern);
+            } else if (Files.isDirectory(path)) {
+                files.addAll(find(path, Integer.MAX_VALUE, BatchAnalyzer::isSupported));
+            } else if (hasGlob(pattern)) {
+                files.addAll(findByGlob(pattern));
+            } else {
+                System.out.println("Файл не найден: " + pattern);
+                missing.add(pattern);
+            }
+        }
+
+        return new ArrayList<>(files);
+    }
+
+    private static List<String> find(Path base, int depth, Predicate<Path> filter) {
+        List<String> found = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            paths.filter(Files::isRegularFile).filter(filter).sorted().forEach(path -> found.add(path.toString()));
+        } catch (IOException e) {
+            System.out.println("Не удалось прочитать каталог: " + base);
+        }
+        return found;
+    }
+
+    private static boolean isSupported(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".csv") || name.endsWith(".xml") || name.endsWith(".csv.gz") || name.endsWith(".xml.gz");
+    }
+
+    private static boolean hasGlob(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0
+                || pattern.indexOf('[') >= 0 || pattern.indexOf('{') >= 0;
+    }
+
+    private static List<String> findByGlob(String pattern) {
+        String[] parts = pattern.split("[/\\\\]");
+        StringBuilder base = new StringBuilder();
+        int fixedParts = 0;
+
+        // каталог до первого элемента пути с подстановочными символами
+        while (fixedParts < parts.length - 1 && !hasGlob(parts[fixedParts])) {
+            base.append(parts[fixedParts]).append('/');
+            fixedParts++;
+        }
+
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : parts.length - fixedParts;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        return find(Paths.get(base.toString()), depth, matcher::matches);
+    }
+
+    private static class FileResult {
+        final StatisticsAccumulator statistics;
+        final long malformed;
+        final long millis;
+        final boolean failed;
+
+        FileResult(StatisticsAccumulator statistics, long malformed, long millis, boolean failed) {
+            this.statistics = statistics;
+            this.malformed = malformed;
+            this.millis = millis;
+            this.failed = failed;
+        }
+    }
+}
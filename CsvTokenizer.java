@@ -0,0 +1,260 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Разбивает CSV на записи и поля прямо по байтам, переиспользуя свои буферы.
+// Разделители полей - ',' и ';', кавычки по RFC 4180 ("" внутри кавычек - одна кавычка,
+// перевод строки внутри кавычек принадлежит полю). Поля без кавычек обрезаются как String.trim.
+// Незакрытая кавычка не превращает остаток файла в одну запись: поле в кавычках длиннее
+// MAX_QUOTED_LENGTH байт заканчивается на ближайшем переводе строки, и запись считается некорректной,
+// как и запись, в которой кавычка не закрылась до конца данных.
+// Строки создаются только по запросу и берутся из небольшого кэша, если такие байты уже встречались.
+class CsvTokenizer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final int MAX_QUOTED_LENGTH = 4096;
+
+    private final InputStream in;
+    private final ByteBuffer source;
+    private final Charset charset;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private byte[] fields = new byte[256];
+    private int fieldsLength;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private int fieldCount;
+    private boolean malformed;
+
+    private final StringCache cache = new StringCache();
+
+    public CsvTokenizer(InputStream in, Charset charset) {
+        this.in = in;
+        this.source = null;
+        this.charset = charset;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    public CsvTokenizer(ByteBuffer source, Charset charset) {
+        this.in = null;
+        this.source = source;
+        this.charset = charset;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    // false - данные закончились
+    public boolean nextRecord() throws IOException {
+        lineLength = 0;
+        fieldsLength = 0;
+        fieldCount = 0;
+        malformed = false;
+
+        int b = read();
+        if (b < 0) {
+            return false;
+        }
+
+        boolean quoted = false;
+        int quotedLength = 0;
+        boolean fieldStarted = false;
+        int significantEnd = 0;
+        startField();
+
+        while (b >= 0) {
+            if (quoted) {
+                if ((b == '\n' || b == '\r') && quotedLength > MAX_QUOTED_LENGTH) {
+                    malformed = true;
+                    if (b == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    break;
+                }
+                quotedLength++;
+                appendLine(b);
+                if (b == '"') {
+                    int next = peek();
+                    if (next == '"') {
+                        quotedLength++;
+                        appendLine(read());
+                        appendField(b);
+                        significantEnd = fieldsLength;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    appendField(b);
+                    significantEnd = fieldsLength;
+                }
+            } else if (b == '\n' || b == '\r') {
+                if (b == '\r' && peek() == '\n') {
+                    read();
+                }
+                break;
+            } else {
+                appendLine(b);
+                if (b == ',' || b == ';') {
+                    endField(significantEnd);
+                    startField();
+                    fieldStarted = false;
+                    significantEnd = fieldsLength;
+                } else if (b == '"' && !fieldStarted) {
+                    quoted = true;
+                    quotedLength = 0;
+                    fieldStarted = true;
+                } else if (b > ' ') {
+                    fieldStarted = true;
+                    appendField(b);
+                    significantEnd = fieldsLength;
+                } else if (fieldStarted) {
+                    appendField(b);
+                }
+            }
+            b = read();
+        }
+
+        if (quoted) {
+            malformed = true;
+        }
+        endField(significantEnd);
+        return true;
+    }
+
+    // true - кавычка в записи не закрылась: поля такой записи ненадёжны
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public String field(int index) {
+        return cache.get(fields, fieldStart[index], fieldEnd[index] - fieldStart[index], charset);
+    }
+
+    // Разбор числа без промежуточной строки; правила те же, что у Integer.parseInt для ASCII-цифр
+    public int intField(int index) {
+        int from = fieldStart[index];
+        int to = fieldEnd[index];
+        if (from == to) {
+            throw new NumberFormatException("Пустое поле");
+        }
+
+        boolean negative = false;
+        int i = from;
+        if (fields[i] == '-' || fields[i] == '+') {
+            negative = fields[i] == '-';
+            i++;
+            if (i == to) {
+                throw new NumberFormatException("Нет цифр");
+            }
+        }
+
+        int bound = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < to; i++) {
+            int digit = fields[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Не цифра");
+            }
+            if (result < (bound + digit) / 10) {
+                throw new NumberFormatException("Переполнение");
+            }
+            result = result * 10 - digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    // Запись целиком, как она была в файле (без перевода строки в конце)
+    public String line() {
+        return new String(line, 0, lineLength, charset);
+    }
+
+    private void startField() {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = fieldsLength;
+    }
+
+    private void endField(int significantEnd) {
+        fieldEnd[fieldCount] = Math.max(fieldStart[fieldCount], significantEnd);
+        fieldCount++;
+    }
+
+    private void appendLine(int b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, lineLength * 2);
+        }
+        line[lineLength++] = (byte) b;
+    }
+
+    private void appendField(int b) {
+        if (fieldsLength == fields.length) {
+            fields = Arrays.copyOf(fields, fieldsLength * 2);
+        }
+        fields[fieldsLength++] = (byte) b;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+
+        if (source != null) {
+            int count = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, count);
+            limit = count;
+        } else {
+            int count = in.read(buffer);
+            limit = Math.max(count, 0);
+        }
+
+        return limit > 0;
+    }
+
+    // Кэш прямого отображения: байты поля -> уже созданная строка
+    private static class StringCache {
+        private static final int SIZE = 8192;
+
+        private final byte[][] keys = new byte[SIZE][];
+        private final String[] values = new String[SIZE];
+
+        String get(byte[] bytes, int offset, int length, Charset charset) {
+            int hash = 0x811C9DC5;
+            for (int i = offset; i < offset + length; i++) {
+                hash = (hash ^ bytes[i]) * 0x01000193;
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+
+            byte[] key = keys[slot];
+            if (key != null && Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) {
+                return values[slot];
+            }
+
+            String value = new String(bytes, offset, length, charset);
+            keys[slot] = Arrays.copyOfRange(bytes, offset, offset + length);
+            values[slot] = value;
+            return value;
+        }
+    }
+}
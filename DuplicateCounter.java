@@ -0,0 +1,139 @@
+import java.util.Objects;
+
+// Счётчик повторений на открытой адресации: в таблице лежат только 64-битные отпечатки,
+// номера строк и счётчики. При совпадении отпечатков строки сравниваются точно через RowMatcher,
+// поэтому коллизии отпечатков не дают ложных дубликатов.
+class DuplicateCounter {
+    interface RowMatcher {
+        boolean matches(int storedRow);
+    }
+
+    interface EntryConsumer {
+        void accept(int row, int count);
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] fingerprints;
+    private int[] rows;
+    private int[] counts;
+    private int mask;
+    private int size;
+
+    public DuplicateCounter() {
+        this(MIN_CAPACITY);
+    }
+
+    public DuplicateCounter(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    // Возвращает новое значение счётчика; 1 означает, что row добавлен как новый ключ
+    public int add(long fingerprint, int row, RowMatcher matcher) {
+        return add(fingerprint, row, 1, matcher);
+    }
+
+    public int add(long fingerprint, int row, int count, RowMatcher matcher) {
+        int slot = (int) fingerprint & mask;
+
+        while (counts[slot] != 0) {
+            if (fingerprints[slot] == fingerprint && matcher.matches(rows[slot])) {
+                counts[slot] += count;
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        fingerprints[slot] = fingerprint;
+        rows[slot] = row;
+        counts[slot] = count;
+        size++;
+
+        if (size * 2 > counts.length) {
+            resize(counts.length * 2);
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Число ключей, встретившихся больше одного раза
+    public int duplicateCount() {
+        int duplicates = 0;
+        for (int count : counts) {
+            if (count > 1) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                consumer.accept(rows[slot], counts[slot]);
+            }
+        }
+    }
+
+    public void forEachDuplicate(EntryConsumer consumer) {
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] > 1) {
+                consumer.accept(rows[slot], counts[slot]);
+            }
+        }
+    }
+
+    public static long fingerprint(Address address) {
+        return fingerprint(Objects.hashCode(address.getCity()), Objects.hashCode(address.getStreet()),
+                Objects.hashCode(address.getHouse()), address.getFloor());
+    }
+
+    public static long fingerprint(int city, int street, int house, int floor) {
+        long hash = city;
+        hash = hash * 0x9E3779B97F4A7C15L + street;
+        hash = hash * 0x9E3779B97F4A7C15L + house;
+        hash = hash * 0x9E3779B97F4A7C15L + floor;
+
+        // финальное перемешивание из MurmurHash3, чтобы младшие биты годились для индекса
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void allocate(int capacity) {
+        fingerprints = new long[capacity];
+        rows = new int[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldFingerprints = fingerprints;
+        int[] oldRows = rows;
+        int[] oldCounts = counts;
+        allocate(capacity);
+
+        for (int i = 0; i < oldCounts.length; i++) {
+            if (oldCounts[i] == 0) {
+                continue;
+            }
+            int slot = (int) oldFingerprints[i] & mask;
+            while (counts[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            fingerprints[slot] = oldFingerprints[i];
+            rows[slot] = oldRows[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Поиск дубликатов для файлов, которые не помещаются в память.
+// Записи раскладываются по хэшу во временные файлы-разделы: одинаковые адреса всегда
+// попадают в один раздел, поэтому разделы можно считать по одному. Раздел, который
+// не укладывается в бюджет памяти, повторно делится с другим перемешиванием хэша.
+class ExternalDuplicateFinder {
+    // во сколько раз адреса в памяти занимают больше места, чем в файле раздела
+    private static final int MEMORY_EXPANSION = 6;
+    private static final int MAX_PARTITIONS = 256;
+    private static final int MAX_DEPTH = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long memoryBudget;
+    private final Path tempDirectory;
+
+    public ExternalDuplicateFinder(long memoryBudget) {
+        this(memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public ExternalDuplicateFinder(long memoryBudget, Path tempDirectory) {
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public Map<Address, Integer> findDuplicates(FileParser parser, String filePath) {
+        return findDuplicates(parser, filePath, address -> { });
+    }
+
+    // observer получает каждую запись во время раскладки по разделам,
+    // чтобы попутная статистика не требовала второго чтения файла.
+    // null - поиск прерван ошибкой временных файлов: неполный список дубликатов выдавать нельзя
+    public Map<Address, Integer> findDuplicates(FileParser parser, String filePath, Consumer<Address> observer) {
+        Map<Address, Integer> duplicates = new HashMap<>();
+        Path workDirectory = null;
+
+        try {
+            workDirectory = Files.createTempDirectory(tempDirectory, "duplicates");
+            long sourceSize = Math.max(1, new File(filePath).length());
+            int partitions = partitionCount(sourceSize);
+
+            Path[] files = spill(workDirectory, "p", partitions, 0, spillConsumer -> parser.parse(filePath, address -> {
+                observer.accept(address);
+                spillConsumer.accept(address);
+            }));
+
+            for (Path file : files) {
+                countPartition(workDirectory, file, 0, duplicates);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Ошибка работы с временными файлами: " + e.getMessage());
+            return null;
+        } finally {
+            if (workDirectory != null) {
+                deleteRecursively(workDirectory);
+            }
+        }
+
+        return duplicates;
+    }
+
+    private int partitionCount(long bytes) {
+        long partitions = (bytes * MEMORY_EXPANSION + memoryBudget - 1) / memoryBudget;
+        return (int) Math.max(1, Math.min(MAX_PARTITIONS, partitions));
+    }
+
+    private void countPartition(Path workDirectory, Path file, int depth, Map<Address, Integer> duplicates)
+            throws IOException {
+        long size = Files.size(file);
+
+        if (size * MEMORY_EXPANSION > memoryBudget && depth < MAX_DEPTH) {
+            Path[] parts = spill(workDirectory, file.getFileName() + "_", Math.max(2, partitionCount(size)),
+                    depth + 1, spillConsumer -> readPartition(file, spillConsumer));
+            Files.delete(file);
+
+            for (Path part : parts) {
+                countPartition(workDirectory, part, depth + 1, duplicates);
+            }
+            return;
+        }
+
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        readPartition(file, accumulator);
+        duplicates.putAll(accumulator.getDuplicates());
+        Files.delete(file);
+    }
+
+    private interface RecordSource {
+        void forEach(Consumer<Address> consumer) throws IOException;
+    }
+
+    private Path[] spill(Path workDirectory, String prefix, int partitions, int depth, RecordSource source)
+            throws IOException {
+        Path[] files = new Path[partitions];
+        DataOutputStream[] outputs = new DataOutputStream[partitions];
+
+        try {
+            for (int i = 0; i < partitions; i++) {
+                files[i] = workDirectory.resolve(prefix + i);
+                outputs[i] = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(files[i]), BUFFER_SIZE / 4));
+            }
+
+            source.forEach(address -> {
+                try {
+                    writeAddress(outputs[partitionOf(address, depth, partitions)], address);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            for (DataOutputStream output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+
+        return files;
+    }
+
+    private static int partitionOf(Address address, int depth, int partitions) {
+        // на каждом уровне свои биты хэша, иначе повторное деление сложило бы всё в один раздел
+        long hash = DuplicateCounter.fingerprint(address) + depth * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        return (int) Math.floorMod(hash, (long) partitions);
+    }
+
+    private static void readPartition(Path file, Consumer<Address> consumer) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), BUFFER_SIZE))) {
+            while (true) {
+                String city;
+                try {
+                    city = readString(input);
+                } catch (EOFException e) {
+                    break;
+                }
+                String street = readString(input);
+                String house = readString(input);
+                int floor = input.readInt();
+                consumer.accept(new Address(city, street, house, floor));
+            }
+        }
+    }
+
+    private static void writeAddress(DataOutputStream output, Address address) throws IOException {
+        writeString(output, address.getCity());
+        writeString(output, address.getStreet());
+        writeString(output, address.getHouse());
+        output.writeInt(address.getFloor());
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.out.println("Не удалось удалить временный файл: " + path);
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Не удалось удалить временный каталог: " + directory);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+// Распаковка gzip в отдельном потоке: распакованные данные передаются читателю блоками
+// из небольшого набора, который используется повторно, так что распаковка следующих блоков
+// идёт одновременно с разбором текущего, а память ограничена BLOCK_COUNT * BLOCK_SIZE.
+// Любая ошибка распаковки передаётся читателю через очередь: иначе он ждал бы следующий блок вечно.
+class GzipPipeInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int BLOCK_COUNT = 4;
+
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCK_COUNT);
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);
+    private final Thread inflater;
+
+    private Block current;
+    private int position;
+    private boolean finished;
+    private volatile boolean closed;
+
+    public GzipPipeInputStream(InputStream compressed) {
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            free.add(new Block());
+        }
+
+        inflater = new Thread(() -> inflate(compressed), "gzip-inflater");
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    public static boolean isGzip(String filePath) {
+        return filePath.toLowerCase().endsWith(".gz");
+    }
+
+    private void inflate(InputStream compressed) {
+        try (InputStream in = new GZIPInputStream(compressed, 64 * 1024)) {
+            while (!closed) {
+                Block block = free.take();
+                block.length = 0;
+                int count;
+                while (block.length < block.data.length
+                        && (count = in.read(block.data, block.length, block.data.length - block.length)) > 0) {
+                    block.length += count;
+                }
+
+                if (block.length == 0) {
+                    free.add(block);
+                    break;
+                }
+                filled.put(block);
+            }
+            filled.put(Block.END);
+        } catch (InterruptedException e) {
+            // поток прерван при закрытии
+        } catch (Throwable e) {
+            putQuietly(Block.failure(e));
+        }
+    }
+
+    private void putQuietly(Block block) {
+        try {
+            filled.put(block);
+        } catch (InterruptedException e) {
+            // читатель уже закрыл поток
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current != null ? current.length - position : 0;
+    }
+
+    // false - данные закончились
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Поток закрыт");
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+
+        Block next;
+        try {
+            next = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Чтение прервано");
+        }
+
+        if (next == Block.END || next.error != null) {
+            finished = true;
+            if (next.error instanceof IOException) {
+                throw (IOException) next.error;
+            }
+            if (next.error instanceof Error) {
+                throw (Error) next.error;
+            }
+            if (next.error != null) {
+                throw new IOException("Ошибка распаковки: " + next.error, next.error);
+            }
+            return false;
+        }
+
+        current = next;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        inflater.interrupt();
+        try {
+            inflater.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Block {
+        static final Block END = new Block(0);
+
+        final byte[] data;
+        int length;
+        Throwable error;
+
+        Block() {
+            this(BLOCK_SIZE);
+        }
+
+        private Block(int size) {
+            this.data = new byte[size];
+        }
+
+        static Block failure(Throwable error) {
+            Block block = new Block(0);
+            block.error = error;
+            return block;
+        }
+    }
+}
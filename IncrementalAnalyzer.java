@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Статистика для CSV, к которому только дописываются строки. Рядом с файлом (<файл>.state)
+// хранятся счётчики всех адресов, этажность по городам и смещение, до которого файл уже разобран.
+// Следующий запуск разбирает только новые байты. Если файл стал короче или его начало либо
+// последние разобранные байты изменились, статистика пересчитывается с нуля.
+class IncrementalAnalyzer {
+    private static final int MAGIC = 0x41444953;
+    private static final int VERSION = 1;
+    private static final int ANCHOR_SIZE = 4096;
+    private static final int SCAN_BLOCK = 8192;
+
+    private final PipelineMetrics.Timer readTimer = new PipelineMetrics.Timer();
+    private final PipelineMetrics.Timer statisticsTimer = new PipelineMetrics.Timer();
+    private long parsedRecords;
+    private long malformedCount;
+
+    // XML и сжатые файлы нельзя дочитывать с места, где остановились в прошлый раз
+    public static boolean isSupported(String filePath) {
+        return filePath.toLowerCase().endsWith(".csv");
+    }
+
+    public static Path statePath(String filePath) {
+        return Paths.get(filePath + ".state");
+    }
+
+    // Время чтения новых байт и подсчёта статистики по ним за всё время работы
+    public long getReadNanos() {
+        return readTimer.getNanos();
+    }
+
+    public long getStatisticsNanos() {
+        return statisticsTimer.getNanos();
+    }
+
+    // Записи и некорректные строки только из новых байт, без восстановленных из состояния
+    public long getParsedRecordCount() {
+        return parsedRecords;
+    }
+
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    public StatisticsAccumulator analyze(String filePath) {
+        Path source = Paths.get(filePath);
+        Path state = statePath(filePath);
+
+        if (!Files.isRegularFile(source)) {
+            System.out.println("Файл не найден: " + filePath);
+            return new StatisticsAccumulator();
+        }
+        if (!isSupported(filePath)) {
+            System.out.println("Дописанные строки можно разбирать только в несжатом CSV");
+            return new StatisticsAccumulator();
+        }
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            SavedState previous = loadState(state);
+
+            StatisticsAccumulator statistics = new StatisticsAccumulator();
+            long offset = 0;
+
+            if (previous != null && previous.offset <= channel.size()
+                    && previous.headChecksum == checksum(channel, 0, Math.min(ANCHOR_SIZE, previous.offset))
+                    && previous.tailChecksum == checksum(channel, Math.max(0, previous.offset - ANCHOR_SIZE), previous.offset)) {
+                statistics = previous.statistics;
+                offset = previous.offset;
+            } else if (previous != null) {
+                System.out.println("Файл был изменён или усечён, статистика пересчитывается полностью");
+            }
+
+            // недописанная последняя запись остаётся на следующий запуск
+            long end = completeRecordsEnd(channel, offset);
+            if (offset > 0) {
+                System.out.println("Новых данных: " + (end - offset) + " байт");
+            }
+
+            if (offset < end) {
+                long restoredRecords = statistics.getRecordCount();
+                channel.position(offset);
+                InputStream in = readTimer.wrap(new LimitedInputStream(Channels.newInputStream(channel), end - offset));
+                CsvParser.parseRecords(new CsvTokenizer(in, CsvParser.CHARSET), offset == 0,
+                        statisticsTimer.wrap(statistics),
+                        line -> {
+                            malformedCount++;
+                            System.out.println("Пропущена некорректная строка: " + line);
+                        });
+                parsedRecords += statistics.getRecordCount() - restoredRecords;
+
+                try {
+                    saveState(state, channel, end, statistics);
+                } catch (IOException e) {
+                    System.out.println("Не удалось сохранить состояние: " + e.getMessage());
+                }
+            }
+
+            return statistics;
+        } catch (IOException e) {
+            System.out.println("Ошибка чтения файла.");
+            return new StatisticsAccumulator();
+        }
+    }
+
+    // Позиция сразу за последней законченной записью; from, если после него нет ни одной.
+    // Перевод строки внутри поля в кавычках запись не завершает, поэтому файл просматривается вперёд
+    // от from - начала записи, где кавычки заведомо закрыты
+    private static long completeRecordsEnd(FileChannel channel, long from) throws IOException {
+        ParallelCsvParser.RecordScanner scanner = new ParallelCsvParser.RecordScanner();
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK);
+        byte[] bytes = block.array();
+        long size = channel.size();
+        long position = from;
+        long end = from;
+
+        while (position < size) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scanner.next(bytes[i] & 0xFF)) {
+                    end = position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return end;
+    }
+
+    private static long checksum(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate((int) (to - from));
+        while (block.hasRemaining() && channel.read(block, from + block.position()) > 0) {
+            // дочитываем диапазон целиком
+        }
+        block.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(block);
+        return crc.getValue();
+    }
+
+    private static void saveState(Path state, FileChannel channel, long offset, StatisticsAccumulator statistics)
+            throws IOException {
+        Path temporary = state.resolveSibling(state.getFileName() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(offset);
+            output.writeLong(checksum(channel, 0, Math.min(ANCHOR_SIZE, offset)));
+            output.writeLong(checksum(channel, Math.max(0, offset - ANCHOR_SIZE), offset));
+            output.writeLong(statistics.getRecordCount());
+
+            output.writeInt(statistics.getDistinctCount());
+            IOException[] failure = new IOException[1];
+            statistics.forEachCount((address, count) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    output.writeUTF(address.getCity());
+                    output.writeUTF(address.getStreet());
+                    output.writeUTF(address.getHouse());
+                    output.writeInt(address.getFloor());
+                    output.writeInt(count);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+
+            Map<String, int[]> floorStats = statistics.getFloorStatistics();
+            output.writeInt(floorStats.size());
+            for (Map.Entry<String, int[]> entry : floorStats.entrySet()) {
+                output.writeUTF(entry.getKey());
+                for (int floorCount : entry.getValue()) {
+                    output.writeInt(floorCount);
+                }
+            }
+        }
+
+        Files.move(temporary, state, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // null - состояния нет или его нельзя прочитать
+    private static SavedState loadState(Path state) {
+        if (!Files.isRegularFile(state)) {
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(state), 64 * 1024))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+
+            SavedState saved = new SavedState();
+            saved.offset = input.readLong();
+            saved.headChecksum = input.readLong();
+            saved.tailChecksum = input.readLong();
+            saved.statistics.addRecordCount(input.readLong());
+
+            int distinct = input.readInt();
+            for (int i = 0; i < distinct; i++) {
+                Address address = new Address(input.readUTF(), input.readUTF(), input.readUTF(), input.readInt());
+                int count = input.readInt();
+                // нулевой счётчик в DuplicateCounter означает пустую ячейку, отрицательный - порча файла
+                if (count <= 0) {
+                    throw new IOException("Некорректный счётчик адреса: " + count);
+                }
+                saved.statistics.addCount(address, count);
+            }
+
+            int cities = input.readInt();
+            for (int i = 0; i < cities; i++) {
+                String city = input.readUTF();
+                int[] floors = new int[5];
+                for (int j = 0; j < floors.length; j++) {
+                    floors[j] = input.readInt();
+                }
+                saved.statistics.addFloors(city, floors);
+            }
+
+            return saved;
+        } catch (IOException e) {
+            System.out.println("Не удалось прочитать сохранённое состояние, статистика пересчитывается полностью");
+            return null;
+        }
+    }
+
+    private static class SavedState {
+        long offset;
+        long headChecksum;
+        long tailChecksum;
+        final StatisticsAccumulator statistics = new StatisticsAccumulator();
+    }
+
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+    }
+}
@@ -1,15 +1,9 @@
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URLEncoder;
-import java.net.URL;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.awt.Desktop;
 import java.util.Scanner;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import java.util.concurrent.CompletableFuture;
 
 public class Main {
     private static WikiSearchResult currentSearch = null;
@@ -41,7 +35,13 @@ public class Main {
         }
 
         Query searchQuery = new Query(query);
-        currentSearch = searchQuery.execute();
+        try {
+            currentSearch = searchQuery.execute();
+        } catch (SearchException e) {
+            printSearchError(e);
+            currentSearch = null;
+            return;
+        }
 
         if (currentSearch == null || currentSearch.getResults().size() == 0) {
             System.out.println("Ничего не найдено. Попробуйте другой запрос.");
@@ -49,7 +49,44 @@ public class Main {
             return;
         }
 
-        currentSearch.display();
+        showPage(currentSearch);
+    }
+
+    // Пока пользователь читает страницу, следующая страница и описания статей уже загружаются
+    private static void showPage(WikiSearchResult page) {
+        currentSearch = page;
+        page.display();
+        page.prefetchNextPage();
+        if (!isOffline()) {
+            ArticleExtracts.getDefault().prefetch(page.getResults());
+        }
+    }
+
+    // Поиск по локальному индексу заголовков (-Dwiki.titleIndex) обходится без сети,
+    // и описания статей тогда тоже не запрашиваются
+    private static boolean isOffline() {
+        return TitleIndex.getDefault() != null;
+    }
+
+    private static void printSearchError(SearchException e) {
+        System.out.println("Ошибка при выполнении поиска: " + e.getMessage());
+        switch (e.getKind()) {
+            case NETWORK:
+                System.out.println("Проверьте подключение к интернету и повторите поиск.");
+                break;
+            case TIMEOUT:
+            case THROTTLED:
+            case SERVER:
+                System.out.println("Повторные попытки не помогли, попробуйте позже.");
+                break;
+            case API:
+                System.out.println("Попробуйте изменить запрос.");
+                break;
+            case INTERNAL:
+                e.printStackTrace();
+                break;
+            default:
+        }
     }
 
     private static void displayMainMenu(Scanner scanner) {
@@ -57,7 +94,9 @@ public class Main {
         System.out.println("1. Выбрать статью из текущего списка");
         System.out.println("2. Новый поиск");
         System.out.println("3. Завершить работу");
-        System.out.print("Выберите действие (1-3): ");
+        System.out.println("4. Следующая страница");
+        System.out.println("5. Предыдущая страница");
+        System.out.print("Выберите действие (1-5): ");
 
         String choice = scanner.nextLine().trim();
 
@@ -66,15 +105,45 @@ public class Main {
                 selectArticleFromCurrentList(scanner);
                 break;
             case "2":
+                currentSearch.cancelPrefetch();
                 currentSearch = null;
                 break;
             case "3":
+                currentSearch.cancelPrefetch();
+                SearchCache.getDefault().printStatistics();
                 System.out.println("Выход из программы. До свидания!");
                 scanner.close();
                 System.exit(0);
                 break;
+            case "4":
+                if (!currentSearch.hasNextPage()) {
+                    System.out.println("Это последняя страница.");
+                    break;
+                }
+                WikiSearchResult next = currentSearch.nextPage();
+                if (next != null && next.getResults().size() > 0) {
+                    showPage(next);
+                }
+                break;
+            case "5":
+                if (!currentSearch.hasPreviousPage()) {
+                    System.out.println("Это первая страница.");
+                    break;
+                }
+                WikiSearchResult previous;
+                try {
+                    previous = currentSearch.previousPage();
+                } catch (SearchException e) {
+                    printSearchError(e);
+                    break;
+                }
+                if (previous.getResults().size() > 0) {
+                    currentSearch.cancelPrefetch();
+                    showPage(previous);
+                }
+                break;
             default:
-                System.out.println("Неверный выбор. Пожалуйста, введите 1, 2 или 3.");
+                System.out.println("Неверный выбор. Пожалуйста, введите число от 1 до 5.");
         }
     }
 
@@ -90,12 +159,7 @@ public class Main {
         try {
             int choice = Integer.parseInt(input);
             if (choice >= 1 && choice <= currentSearch.getResults().size()) {
-                SearchItems article = currentSearch.getResults().get(choice - 1);
-                boolean opened = article.openInBrowser();
-
-                if (opened) {
-                    System.out.println("Статья открыта в браузере!");
-                }
+                showArticle(currentSearch.getResults().get(choice - 1));
 
                 System.out.println("\nНажмите Enter для возврата в меню...");
                 scanner.nextLine();
@@ -106,61 +170,100 @@ public class Main {
             System.out.println("Пожалуйста, введите корректный номер.");
         }
     }
+
+    // Описание статьи выводится в консоль, так что выбор статьи работает и там, где нет браузера
+    private static void showArticle(SearchItems article) {
+        System.out.println("\n=== " + article.getTitle() + " ===");
+        if (article.getPageId() > 0 && !isOffline()) {
+            try {
+                String extract = ArticleExtracts.getDefault().get(article.getPageId()).join();
+                System.out.println(extract.isEmpty() ? "У статьи нет краткого описания." : wrap(extract, 100));
+            } catch (Exception e) {
+                System.out.println("Не удалось загрузить описание статьи: " + SearchException.from(e).getMessage());
+            }
+        }
+        System.out.println("\nСсылка: " + article.getUrl());
+
+        if (Desktop.isDesktopSupported() && article.openInBrowser()) {
+            System.out.println("Статья открыта в браузере!");
+        }
+    }
+
+    // Переносит строки по словам, абзацы сохраняются
+    private static String wrap(String text, int width) {
+        StringBuilder wrapped = new StringBuilder(text.length() + text.length() / width + 1);
+        for (String paragraph : text.split("\n")) {
+            int lineLength = 0;
+            for (String word : paragraph.trim().split(" +")) {
+                if (lineLength > 0 && lineLength + 1 + word.length() > width) {
+                    wrapped.append('\n');
+                    lineLength = 0;
+                } else if (lineLength > 0) {
+                    wrapped.append(' ');
+                    lineLength++;
+                }
+                wrapped.append(word);
+                lineLength += word.length();
+            }
+            wrapped.append('\n');
+        }
+        return wrapped.toString().trim();
+    }
 }
 
 class Query {
+    // размер страницы результатов: -Dwiki.pageSize, API отдаёт не больше 500 за раз
+    static final int PAGE_SIZE = Math.max(1, Math.min(500, Integer.getInteger("wiki.pageSize", WikiSearchClient.DEFAULT_LIMIT)));
+
     private String queryText;
+    private int pageSize;
+    private int offset;
 
     public Query(String queryText) {
+        this(queryText, PAGE_SIZE, 0);
+    }
+
+    public Query(String queryText, int pageSize, int offset) {
         this.queryText = queryText;
+        this.pageSize = pageSize;
+        this.offset = offset;
     }
 
-    public WikiSearchResult execute() {
-        try {
-            String encodedQuery = URLEncoder.encode(queryText, "UTF-8");
-            String apiUrl = "https://ru.wikipedia.org/w/api.php?" +
-                    "action=query&list=search&srsearch=" + encodedQuery +
-                    "&srlimit=10&utf8=&format=json";
-
-            URL url = new URL(apiUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "WikiSearchApp/1.0");
-
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-            in.close();
-            conn.disconnect();
-
-            String json = response.toString();
-            JsonObject jsonResponse = JsonParser.parseString(json).getAsJsonObject();
-            JsonObject queryObj = jsonResponse.getAsJsonObject("query");
-            JsonArray searchResults = queryObj.getAsJsonArray("search");
-
-            WikiSearchResult result = new WikiSearchResult(queryText);
-            for (int i = 0; i < searchResults.size(); i++) {
-                JsonObject article = searchResults.get(i).getAsJsonObject();
-                String title = article.get("title").getAsString();
-                int pageId = article.get("pageid").getAsInt();
-                result.addResult(new SearchItems(title, pageId));
-            }
+    // Не блокирует вызывающий поток; несколько запросов могут идти одновременно.
+    // Повторный запрос берётся из кэша и без сети, пока запись не устарела; одинаковые
+    // запросы, отправленные одновременно, уходят в сеть один раз (SearchDispatcher).
+    // Если задан локальный индекс заголовков (-Dwiki.titleIndex), поиск идёт по нему, без сети
+    public CompletableFuture<WikiSearchResult> executeAsync() {
+        TitleIndex index = TitleIndex.getDefault();
+        if (index != null) {
+            return CompletableFuture.completedFuture(index.search(queryText, pageSize, offset));
+        }
 
-            return result;
+        String key = SearchCache.key(WikiSearchClient.getDefault().getEndpoint(), queryText, pageSize, offset);
+        return SearchCache.getDefault().get(key, () -> SearchDispatcher.getDefault().submit(key,
+                () -> WikiSearchClient.getDefault().search(queryText, pageSize, offset)));
+    }
 
+    // Ошибка поиска - SearchException с причиной, а не пустой результат
+    public WikiSearchResult execute() {
+        try {
+            return executeAsync().join();
         } catch (Exception e) {
-            System.out.println("Ошибка при выполнении поиска: " + e.getMessage());
-            return new WikiSearchResult(queryText); // возвращаем пустой результат
+            throw SearchException.from(e);
         }
     }
 }
 
+// Одна страница результатов поиска. Следующую страницу можно загрузить заранее (prefetchNextPage),
+// тогда nextPage вернёт её сразу; ненужная загрузка отменяется через cancelPrefetch.
 class WikiSearchResult {
     private String query;
     private java.util.ArrayList<SearchItems> results;
+    private int offset;
+    private int pageSize = Query.PAGE_SIZE;
+    private int nextOffset = -1;
+    private int totalHits;
+    private CompletableFuture<WikiSearchResult> nextPage;
 
     public WikiSearchResult(String query) {
         this.query = query;
@@ -171,12 +274,82 @@ class WikiSearchResult {
         results.add(item);
     }
 
+    public String getQuery() {
+        return query;
+    }
+
     public java.util.ArrayList<SearchItems> getResults() {
         return results;
     }
 
+    // nextOffset < 0 - следующей страницы нет
+    public void setPaging(int offset, int pageSize, int nextOffset, int totalHits) {
+        this.offset = offset;
+        this.pageSize = pageSize;
+        this.nextOffset = nextOffset;
+        this.totalHits = totalHits;
+    }
+
+    public int getOffset() { return offset; }
+    public int getPageSize() { return pageSize; }
+    public int getNextOffset() { return nextOffset; }
+    public int getTotalHits() { return totalHits; }
+
+    // Те же результаты и страница, но без начатой загрузки следующей страницы
+    public WikiSearchResult copy() {
+        WikiSearchResult copy = new WikiSearchResult(query);
+        copy.results.addAll(results);
+        copy.setPaging(offset, pageSize, nextOffset, totalHits);
+        return copy;
+    }
+
+    public boolean hasNextPage() {
+        return nextOffset >= 0;
+    }
+
+    public boolean hasPreviousPage() {
+        return offset > 0;
+    }
+
+    public synchronized void prefetchNextPage() {
+        // отменённая или неудачная загрузка повторяется
+        if (hasNextPage() && (nextPage == null || nextPage.isCompletedExceptionally())) {
+            nextPage = new Query(query, pageSize, nextOffset).executeAsync();
+        }
+    }
+
+    public synchronized void cancelPrefetch() {
+        if (nextPage != null && !nextPage.isDone()) {
+            nextPage.cancel(true);
+        }
+        nextPage = null;
+    }
+
+    // null - страницу загрузить не удалось, сообщение уже выведено
+    public WikiSearchResult nextPage() {
+        CompletableFuture<WikiSearchResult> page;
+        synchronized (this) {
+            prefetchNextPage();
+            page = nextPage;
+        }
+
+        try {
+            return page.join();
+        } catch (Exception e) {
+            System.out.println("Ошибка при загрузке страницы: " + SearchException.from(e).getMessage());
+            return null;
+        }
+    }
+
+    // Предыдущие страницы обычно уже в кэше
+    public WikiSearchResult previousPage() {
+        return new Query(query, pageSize, Math.max(0, offset - pageSize)).execute();
+    }
+
     public void display() {
-        System.out.println("\n=== Результаты поиска: '" + query + "' ===");
+        String range = results.isEmpty() ? "" : " (" + (offset + 1) + "-" + (offset + results.size())
+                + (totalHits > 0 ? " из " + totalHits : "") + ")";
+        System.out.println("\n=== Результаты поиска: '" + query + "'" + range + " ===");
         for (int i = 0; i < results.size(); i++) {
             System.out.println((i + 1) + ". " + results.get(i).getTitle());
         }
@@ -196,9 +369,20 @@ class SearchItems {
         return title;
     }
 
+    public int getPageId() {
+        return pageId;
+    }
+
+    // В выгрузке заголовков без номеров страниц статья открывается по названию
+    public String getUrl() {
+        return pageId > 0
+                ? "https://ru.wikipedia.org/w/index.php?curid=" + pageId
+                : "https://ru.wikipedia.org/wiki/" + URLEncoder.encode(title.replace(' ', '_'), StandardCharsets.UTF_8);
+    }
+
     public boolean openInBrowser() {
         try {
-            String articleUrl = "https://ru.wikipedia.org/w/index.php?curid=" + pageId;
+            String articleUrl = getUrl();
             System.out.println("Открываю статью: " + title);
 
             if (Desktop.isDesktopSupported()) {
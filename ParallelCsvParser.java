@@ -0,0 +1,193 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+// Разбирает CSV по кускам: файл отображается в память, режется по границам записей,
+// куски разбираются параллельно и передаются потребителю в исходном порядке.
+// Результат совпадает с CsvParser, включая пропуск заголовка и сообщения о некорректных строках.
+// Кодировка должна быть совместима с ASCII. Границы кусков ищутся одним последовательным проходом
+// с теми же правилами кавычек, что у CsvTokenizer, поэтому перевод строки внутри поля в кавычках
+// кусок не разрезает.
+class ParallelCsvParser extends FileParser {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 16L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final Charset charset;
+
+    public ParallelCsvParser() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelCsvParser(ForkJoinPool pool) {
+        this.pool = pool;
+        this.charset = CsvParser.CHARSET;
+    }
+
+    @Override
+    public void parse(String filePath, Consumer<Address> consumer) {
+        Path path = Paths.get(filePath);
+
+        if (!Files.isRegularFile(path)) {
+            reportFailure("Файл не найден: " + filePath);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = splitIntoChunks(channel);
+            int window = pool.getParallelism() * 2;
+            Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+            int next = 0;
+
+            // В работе не больше window кусков: память ограничена, а порядок записей сохраняется
+            while (next < bounds.length - 1 || !inFlight.isEmpty()) {
+                while (next < bounds.length - 1 && inFlight.size() < window) {
+                    Chunk chunk = new Chunk(bounds[next], bounds[next + 1], next == 0);
+                    inFlight.addLast(pool.submit(() -> parseChunk(channel, chunk)));
+                    next++;
+                }
+
+                Chunk chunk = inFlight.removeFirst().join();
+                if (chunk.error != null) {
+                    for (ForkJoinTask<Chunk> task : inFlight) {
+                        task.cancel(false);
+                    }
+                    throw chunk.error;
+                }
+
+                for (Address address : chunk.addresses) {
+                    consumer.accept(address);
+                }
+                for (String line : chunk.malformedLines) {
+                    reportMalformed("Пропущена некорректная строка: " + line);
+                }
+            }
+        } catch (IOException e) {
+            reportFailure("Ошибка чтения файла.");
+        }
+    }
+
+    private long[] splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = size / ((long) pool.getParallelism() * CHUNKS_PER_THREAD);
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        RecordScanner scanner = new RecordScanner();
+        ByteBuffer probe = ByteBuffer.allocate(1024 * 1024);
+        byte[] bytes = probe.array();
+        long position = 0;
+        long target = chunkSize;
+
+        while (position < size && target < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                // кусок заканчивается на первом конце записи после target
+                if (scanner.next(bytes[i] & 0xFF) && position + i + 1 >= target && position + i + 1 < size) {
+                    bounds.add(position + i + 1);
+                    target = position + i + 1 + chunkSize;
+                }
+            }
+            position += read;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Состояние кавычек CsvTokenizer без разбора полей: кавычка открывает поле в кавычках, только если
+    // перед ней в поле нет значимых символов, "" внутри кавычек - экранированная кавычка
+    static class RecordScanner {
+        private boolean quoted;
+        private int quotedLength;
+        private boolean fieldStarted;
+        private boolean quoteInQuoted;
+
+        // true - байт '\n' завершает запись вне кавычек, следующая запись начинается сразу за ним.
+        // После одиночного '\r' кусок не режется: следующим байтом может быть '\n' той же записи
+        boolean next(int b) {
+            if (quoteInQuoted) {
+                quoteInQuoted = false;
+                if (b == '"') {
+                    quotedLength++;
+                    return false;
+                }
+                quoted = false;
+            }
+
+            if (quoted) {
+                // слишком длинное поле в кавычках CsvTokenizer обрывает на переводе строки
+                if ((b == '\n' || b == '\r') && quotedLength > CsvTokenizer.MAX_QUOTED_LENGTH) {
+                    quoted = false;
+                    fieldStarted = false;
+                    return b == '\n';
+                }
+                quotedLength++;
+                quoteInQuoted = b == '"';
+                return false;
+            }
+
+            if (b == '\n' || b == '\r') {
+                fieldStarted = false;
+                return b == '\n';
+            }
+            if (b == ',' || b == ';') {
+                fieldStarted = false;
+            } else if (b == '"' && !fieldStarted) {
+                quoted = true;
+                quotedLength = 0;
+                fieldStarted = true;
+            } else if (b > ' ') {
+                fieldStarted = true;
+            }
+            return false;
+        }
+    }
+
+    private Chunk parseChunk(FileChannel channel, Chunk chunk) {
+        try {
+            parseLines(channel, chunk);
+        } catch (IOException e) {
+            chunk.error = e;
+        }
+        return chunk;
+    }
+
+    private void parseLines(FileChannel channel, Chunk chunk) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+        CsvTokenizer tokenizer = new CsvTokenizer(buffer, charset);
+        CsvParser.parseRecords(tokenizer, chunk.first, chunk.addresses::add, chunk.malformedLines::add);
+    }
+
+    private static class Chunk {
+        final long start;
+        final long end;
+        final boolean first;
+        final List<Address> addresses = new ArrayList<>();
+        final List<String> malformedLines = new ArrayList<>();
+        IOException error;
+
+        Chunk(long start, long end, boolean first) {
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+    }
+}
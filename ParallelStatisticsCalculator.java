@@ -0,0 +1,404 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Та же статистика, что у StatisticsCalculator, но список делится между потоками fork-join пула.
+// Каждая подзадача считает в собственные счётчики, результаты сливаются в конце,
+// поэтому итог не зависит от числа потоков. Небольшие входы (меньше MIN_LEAF_SIZE строк)
+// считаются одной задачей, без деления.
+class ParallelStatisticsCalculator {
+    // Строки, по которым считается статистика: список адресов или AddressStore
+    private interface Rows {
+        int size();
+        long fingerprint(int row);
+        boolean same(int row, int otherRow);
+        String city(int row);
+        int floor(int row);
+        Address address(int row);
+    }
+
+    private static final int MIN_LEAF_SIZE = 8192;
+    private static final int LEAVES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int minFloor;
+    private final int maxFloor;
+
+    public ParallelStatisticsCalculator() {
+        this(ForkJoinPool.commonPool(), 1, 5);
+    }
+
+    public ParallelStatisticsCalculator(ForkJoinPool pool, int minFloor, int maxFloor) {
+        if (minFloor > maxFloor) {
+            throw new IllegalArgumentException("Минимальный этаж больше максимального");
+        }
+        this.pool = pool;
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+    }
+
+    public Map<Address, Integer> findDuplicates(List<Address> addresses) {
+        return findDuplicates(rowsOf(addresses));
+    }
+
+    public Map<Address, Integer> findDuplicates(AddressStore store) {
+        return findDuplicates(rowsOf(store));
+    }
+
+    public FloorStatistics calculateFloorStatistics(List<Address> addresses) {
+        Rows rows = rowsOf(addresses);
+        return pool.invoke(new FloorsTask(rows, 0, rows.size(), leafSize(rows.size())));
+    }
+
+    // Группировка по номеру города в словаре - обращение к массиву, а не к HashMap по строке;
+    // названия подставляются один раз в конце
+    public FloorStatistics calculateFloorStatistics(AddressStore store) {
+        FloorHistogram[] byCity = pool.invoke(new CityFloorsTask(store, 0, store.size(), leafSize(store.size())));
+        FloorStatistics statistics = new FloorStatistics(minFloor, maxFloor);
+        for (int cityId = 0; cityId < byCity.length; cityId++) {
+            if (byCity[cityId] != null) {
+                statistics.add(store.getCity(cityId), byCity[cityId]);
+            }
+        }
+        return statistics;
+    }
+
+    // Сначала параллельно считаются отпечатки, затем строки за один проход раскладываются
+    // по долям отпечатков, и каждая задача ведёт счётчик только для своей доли: одинаковые адреса
+    // попадают в одну долю, так что счётчики не нужно сливать, достаточно объединить дубликаты
+    private Map<Address, Integer> findDuplicates(Rows rows) {
+        int size = rows.size();
+        long[] fingerprints = new long[size];
+        pool.invoke(new FingerprintTask(rows, fingerprints, 0, size, leafSize(size)));
+
+        int partitions = Math.max(1, Math.min(pool.getParallelism() * LEAVES_PER_THREAD, size / MIN_LEAF_SIZE));
+        int[] starts = new int[partitions + 1];
+        for (long fingerprint : fingerprints) {
+            starts[share(fingerprint, partitions) + 1]++;
+        }
+        for (int partition = 0; partition < partitions; partition++) {
+            starts[partition + 1] += starts[partition];
+        }
+        // внутри доли строки идут в порядке файла, как при последовательном подсчёте
+        int[] ordered = new int[size];
+        int[] next = Arrays.copyOf(starts, partitions);
+        for (int row = 0; row < size; row++) {
+            ordered[next[share(fingerprints[row], partitions)]++] = row;
+        }
+
+        List<PartitionTask> tasks = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            tasks.add(new PartitionTask(rows, fingerprints, ordered, starts[partition], starts[partition + 1]));
+        }
+
+        Map<Address, Integer> duplicates = new HashMap<>();
+        for (PartitionTask task : pool.invoke(new InvokeAllTask(tasks))) {
+            task.getRawResult().forEachDuplicate((row, count) -> duplicates.put(rows.address(row), count));
+        }
+        return duplicates;
+    }
+
+    // доля выбирается по старшим битам, а ячейка таблицы - по младшим
+    private static int share(long fingerprint, int partitions) {
+        return (int) ((fingerprint >>> 33) % partitions);
+    }
+
+    private static Rows rowsOf(List<Address> addresses) {
+        Address[] rows = addresses.toArray(new Address[0]);
+        return new Rows() {
+            public int size() { return rows.length; }
+            public long fingerprint(int row) { return DuplicateCounter.fingerprint(rows[row]); }
+            public boolean same(int row, int otherRow) { return rows[row].equals(rows[otherRow]); }
+            public String city(int row) { return rows[row].getCity(); }
+            public int floor(int row) { return rows[row].getFloor(); }
+            public Address address(int row) { return rows[row]; }
+        };
+    }
+
+    // Отпечатки и сравнение - по номерам строк в словарях, без создания Address на каждую строку
+    private static Rows rowsOf(AddressStore store) {
+        return new Rows() {
+            public int size() { return store.size(); }
+            public long fingerprint(int row) {
+                return DuplicateCounter.fingerprint(store.getCityId(row), store.getStreetId(row),
+                        store.getHouseId(row), store.getFloor(row));
+            }
+            public boolean same(int row, int otherRow) { return store.sameAddress(row, otherRow); }
+            public String city(int row) { return store.getCity(store.getCityId(row)); }
+            public int floor(int row) { return store.getFloor(row); }
+            public Address address(int row) { return store.get(row); }
+        };
+    }
+
+    private int leafSize(int total) {
+        return Math.max(MIN_LEAF_SIZE, total / (pool.getParallelism() * LEAVES_PER_THREAD));
+    }
+
+    private static class FingerprintTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows rows;
+        private final long[] fingerprints;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        FingerprintTask(Rows rows, long[] fingerprints, int from, int to, int leafSize) {
+            this.rows = rows;
+            this.fingerprints = fingerprints;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                for (int row = from; row < to; row++) {
+                    fingerprints[row] = rows.fingerprint(row);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new FingerprintTask(rows, fingerprints, from, middle, leafSize),
+                    new FingerprintTask(rows, fingerprints, middle, to, leafSize));
+        }
+    }
+
+    // Счётчик для строк ordered[from..to) - одной доли отпечатков
+    private static class PartitionTask extends RecursiveTask<DuplicateCounter> {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows rows;
+        private final long[] fingerprints;
+        private final int[] ordered;
+        private final int from;
+        private final int to;
+
+        PartitionTask(Rows rows, long[] fingerprints, int[] ordered, int from, int to) {
+            this.rows = rows;
+            this.fingerprints = fingerprints;
+            this.ordered = ordered;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected DuplicateCounter compute() {
+            DuplicateCounter counter = new DuplicateCounter(to - from);
+            for (int i = from; i < to; i++) {
+                int row = ordered[i];
+                counter.add(fingerprints[row], row, stored -> rows.same(stored, row));
+            }
+            return counter;
+        }
+    }
+
+    private static class InvokeAllTask extends RecursiveTask<List<PartitionTask>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<PartitionTask> tasks;
+
+        InvokeAllTask(List<PartitionTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<PartitionTask> compute() {
+            return new ArrayList<>(invokeAll(tasks));
+        }
+    }
+
+    private class FloorsTask extends RecursiveTask<FloorStatistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows rows;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        FloorsTask(Rows rows, int from, int to, int leafSize) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected FloorStatistics compute() {
+            if (to - from <= leafSize) {
+                FloorStatistics statistics = new FloorStatistics(minFloor, maxFloor);
+                for (int row = from; row < to; row++) {
+                    statistics.add(rows.city(row), rows.floor(row));
+                }
+                return statistics;
+            }
+
+            int middle = (from + to) >>> 1;
+            FloorsTask right = new FloorsTask(rows, middle, to, leafSize);
+            right.fork();
+            FloorStatistics merged = new FloorsTask(rows, from, middle, leafSize).compute();
+            merged.merge(right.join());
+            return merged;
+        }
+    }
+
+    // Гистограммы по номеру города в словаре AddressStore; null - в диапазоне нет строк этого города
+    private class CityFloorsTask extends RecursiveTask<FloorHistogram[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final AddressStore store;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        CityFloorsTask(AddressStore store, int from, int to, int leafSize) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected FloorHistogram[] compute() {
+            if (to - from <= leafSize) {
+                FloorHistogram[] byCity = new FloorHistogram[store.getCityCount()];
+                for (int row = from; row < to; row++) {
+                    int cityId = store.getCityId(row);
+                    if (byCity[cityId] == null) {
+                        byCity[cityId] = new FloorHistogram(minFloor, maxFloor);
+                    }
+                    byCity[cityId].add(store.getFloor(row));
+                }
+                return byCity;
+            }
+
+            int middle = (from + to) >>> 1;
+            CityFloorsTask right = new CityFloorsTask(store, middle, to, leafSize);
+            right.fork();
+            FloorHistogram[] merged = new CityFloorsTask(store, from, middle, leafSize).compute();
+            FloorHistogram[] other = right.join();
+            for (int cityId = 0; cityId < merged.length; cityId++) {
+                if (merged[cityId] == null) {
+                    merged[cityId] = other[cityId];
+                } else if (other[cityId] != null) {
+                    merged[cityId].merge(other[cityId]);
+                }
+            }
+            return merged;
+        }
+    }
+}
+
+// Этажность по городам для диапазона этажей [minFloor, maxFloor].
+// Этажи вне диапазона не теряются, а считаются отдельно по каждому городу.
+class FloorStatistics {
+    private final int minFloor;
+    private final int maxFloor;
+    private final Map<String, FloorHistogram> histograms = new HashMap<>();
+
+    public FloorStatistics(int minFloor, int maxFloor) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+    }
+
+    public void add(String city, int floor) {
+        FloorHistogram histogram = histograms.get(city);
+        if (histogram == null) {
+            histogram = new FloorHistogram(minFloor, maxFloor);
+            histograms.put(city, histogram);
+        }
+        histogram.add(floor);
+    }
+
+    // Гистограмма с тем же диапазоном этажей прибавляется к счётчикам города
+    public void add(String city, FloorHistogram other) {
+        FloorHistogram histogram = histograms.get(city);
+        if (histogram == null) {
+            histograms.put(city, other.copy());
+        } else {
+            histogram.merge(other);
+        }
+    }
+
+    public void merge(FloorStatistics other) {
+        if (other.minFloor != minFloor || other.maxFloor != maxFloor) {
+            throw new IllegalArgumentException("Разные диапазоны этажей");
+        }
+        for (Map.Entry<String, FloorHistogram> entry : other.histograms.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int getMinFloor() { return minFloor; }
+    public int getMaxFloor() { return maxFloor; }
+
+    public Map<String, FloorHistogram> getHistograms() {
+        return histograms;
+    }
+
+    public long getOutOfRangeCount() {
+        long total = 0;
+        for (FloorHistogram histogram : histograms.values()) {
+            total += histogram.getOutOfRange();
+        }
+        return total;
+    }
+
+    // В том же виде, что возвращает StatisticsCalculator.calculateFloorStatistics
+    public Map<String, int[]> toCountsMap() {
+        Map<String, int[]> counts = new HashMap<>();
+        for (Map.Entry<String, FloorHistogram> entry : histograms.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getCounts());
+        }
+        return counts;
+    }
+}
+
+class FloorHistogram {
+    private final int minFloor;
+    private final int[] counts;
+    private int outOfRange;
+
+    public FloorHistogram(int minFloor, int maxFloor) {
+        this.minFloor = minFloor;
+        this.counts = new int[maxFloor - minFloor + 1];
+    }
+
+    public void add(int floor) {
+        long index = (long) floor - minFloor;
+        if (index >= 0 && index < counts.length) {
+            counts[(int) index]++;
+        } else {
+            outOfRange++;
+        }
+    }
+
+    public void merge(FloorHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        outOfRange += other.outOfRange;
+    }
+
+    public FloorHistogram copy() {
+        FloorHistogram copy = new FloorHistogram(minFloor, minFloor + counts.length - 1);
+        copy.merge(this);
+        return copy;
+    }
+
+    public int getCount(int floor) {
+        long index = (long) floor - minFloor;
+        return index >= 0 && index < counts.length ? counts[(int) index] : 0;
+    }
+
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    public int getOutOfRange() {
+        return outOfRange;
+    }
+}
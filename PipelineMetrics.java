@@ -0,0 +1,314 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import jdk.jfr.*;
+
+// Замер этапов обработки файла: время с точностью до наносекунд, число записей и байт,
+// некорректные строки и байты, выделенные текущим потоком (работа пула ParallelCsvParser сюда
+// не попадает). Каждый этап записывается как событие JFR addresses.PipelinePhase, а сводку можно
+// дописывать строкой JSON в файл из -Daddresses.metricsJson (значение "-" - вывод в консоль).
+// Работа, которая идёт вперемешку с разбором (чтение файла, подсчёт статистики в потоке записей),
+// замеряется Timer и выделяется из этапа разбора отдельными этапами через Phase.part.
+class PipelineMetrics {
+    private final String file;
+    private final List<Phase> phases = new ArrayList<>();
+
+    public PipelineMetrics(String file) {
+        this.file = file;
+    }
+
+    public Phase start(String name) {
+        return new Phase(name);
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (Phase phase : phases) {
+            total += phase.nanos;
+        }
+        return total;
+    }
+
+    public void print() {
+        System.out.println("\n--- ЭТАПЫ ОБРАБОТКИ ---");
+        for (Phase phase : phases) {
+            StringBuilder line = new StringBuilder(String.format("%s: %.3f мс", phase.name, phase.nanos / 1e6));
+            if (phase.records > 0) {
+                line.append(String.format(", записей: %d (%.0f/с)", phase.records, phase.getRecordsPerSecond()));
+            }
+            if (phase.bytes > 0) {
+                line.append(String.format(", прочитано: %.1f МБ (%.1f МБ/с)",
+                        phase.bytes / 1048576.0, phase.getBytesPerSecond() / 1048576.0));
+            }
+            if (phase.malformed > 0) {
+                line.append(", некорректных: ").append(phase.malformed);
+            }
+            if (phase.allocated >= 0) {
+                line.append(String.format(", выделено: %.1f МБ", phase.allocated / 1048576.0));
+            }
+            System.out.println(line);
+        }
+        System.out.printf("Время обработки: %.3f мс%n", getTotalNanos() / 1e6);
+
+        writeJsonSummary();
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"file\":\"").append(escapeJson(file)).append("\",\"totalNanos\":").append(getTotalNanos())
+                .append(",\"phases\":[");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(escapeJson(phase.name)).append('"')
+                    .append(",\"nanos\":").append(phase.nanos)
+                    .append(",\"records\":").append(phase.records)
+                    .append(",\"bytes\":").append(phase.bytes)
+                    .append(",\"malformed\":").append(phase.malformed)
+                    .append(",\"allocatedBytes\":").append(phase.allocated)
+                    .append(",\"recordsPerSecond\":").append(Math.round(phase.getRecordsPerSecond()))
+                    .append(",\"bytesPerSecond\":").append(Math.round(phase.getBytesPerSecond()))
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private void writeJsonSummary() {
+        String target = System.getProperty("addresses.metricsJson");
+        if (target == null || target.isEmpty()) {
+            return;
+        }
+
+        if (target.equals("-")) {
+            System.out.println(toJson());
+            return;
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(target, true), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+            writer.write('\n');
+        } catch (IOException e) {
+            System.out.println("Не удалось записать сводку замеров: " + e.getMessage());
+        }
+    }
+
+    private static String escapeJson(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // Суммарное время внутри обёрнутых вызовов. Чтения замеряются все - они идут крупными блоками,
+    // а из вызовов потребителя, которых столько же, сколько записей, замеряется каждый SAMPLE-й,
+    // и общее время оценивается по ним: замер каждой записи заметно замедлил бы разбор.
+    // Рассчитан на один поток, как и сам разбор
+    static class Timer {
+        private static final int SAMPLE = 16;
+
+        private long nanos;
+        private long calls;
+        private long sampledNanos;
+
+        public long getNanos() {
+            long sampled = (calls + SAMPLE - 1) / SAMPLE;
+            // в double: произведение sampledNanos * calls на больших файлах выходит за пределы long
+            return nanos + (sampled == 0 ? 0 : (long) ((double) sampledNanos * calls / sampled));
+        }
+
+        public <T> Consumer<T> wrap(Consumer<T> consumer) {
+            return value -> {
+                if (calls++ % SAMPLE != 0) {
+                    consumer.accept(value);
+                    return;
+                }
+                long start = System.nanoTime();
+                consumer.accept(value);
+                sampledNanos += System.nanoTime() - start;
+            };
+        }
+
+        public InputStream wrap(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        return super.read();
+                    } finally {
+                        nanos += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        return super.read(b, off, len);
+                    } finally {
+                        nanos += System.nanoTime() - start;
+                    }
+                }
+            };
+        }
+    }
+
+    class Phase implements AutoCloseable {
+        private final String name;
+        private final PipelinePhaseEvent event = new PipelinePhaseEvent();
+        private final List<Phase> parts = new ArrayList<>();
+        private final long startNanos;
+        private final long startAllocated;
+        private long nanos;
+        private long records;
+        private long bytes;
+        private long malformed;
+        private long allocated = -1;
+
+        private Phase(String name) {
+            this.name = name;
+            this.startAllocated = allocatedBytes();
+            event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        // Уже замеренная часть другого этапа
+        private Phase(String name, long nanos) {
+            this.name = name;
+            this.startNanos = 0;
+            this.startAllocated = -1;
+            this.nanos = nanos;
+        }
+
+        // Часть этапа, замеренная Timer: её время вычитается из этапа, а сама она выводится
+        // и записывается в JFR следующим этапом. Выделенная память остаётся на всём этапе
+        public Phase part(String name, long nanos) {
+            Phase part = new Phase(name, nanos);
+            parts.add(part);
+            return part;
+        }
+
+        public Phase records(long records) {
+            this.records = records;
+            return this;
+        }
+
+        public Phase bytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        public Phase malformed(long malformed) {
+            this.malformed = malformed;
+            return this;
+        }
+
+        public String getName() { return name; }
+        public long getNanos() { return nanos; }
+
+        public double getRecordsPerSecond() {
+            return nanos > 0 ? records * 1e9 / nanos : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return nanos > 0 ? bytes * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public void close() {
+            nanos = System.nanoTime() - startNanos;
+            event.end();
+            if (startAllocated >= 0) {
+                allocated = allocatedBytes() - startAllocated;
+            }
+            for (Phase part : parts) {
+                nanos -= part.nanos;
+            }
+            nanos = Math.max(0, nanos);
+
+            commit();
+            phases.add(this);
+            for (Phase part : parts) {
+                part.commit();
+                phases.add(part);
+            }
+        }
+
+        private void commit() {
+            if (event.shouldCommit()) {
+                event.file = file;
+                event.phase = name;
+                event.nanos = nanos;
+                event.records = records;
+                event.bytes = bytes;
+                event.malformed = malformed;
+                event.allocated = allocated;
+                event.recordsPerSecond = getRecordsPerSecond();
+                event.bytesPerSecond = getBytesPerSecond();
+                event.commit();
+            }
+        }
+    }
+}
+
+@Name("addresses.PipelinePhase")
+@Label("Этап обработки адресов")
+@Category("Address Analyzer")
+@StackTrace(false)
+class PipelinePhaseEvent extends Event {
+    @Label("Файл")
+    String file;
+
+    @Label("Этап")
+    String phase;
+
+    // без времени частей, выделенных в отдельные этапы; у частей длительность самого события нулевая
+    @Label("Время этапа")
+    @Timespan
+    long nanos;
+
+    @Label("Записей")
+    long records;
+
+    @Label("Прочитано")
+    @DataAmount
+    long bytes;
+
+    @Label("Некорректных строк")
+    long malformed;
+
+    @Label("Выделено памяти")
+    @DataAmount
+    long allocated;
+
+    @Label("Записей в секунду")
+    double recordsPerSecond;
+
+    @Label("Байт в секунду")
+    @DataAmount
+    double bytesPerSecond;
+}
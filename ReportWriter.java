@@ -0,0 +1,180 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Отчёт по дубликатам. В консоль выводится только сводка: topK самых частых адресов,
+// выбранных кучей ограниченного размера, без сортировки всего набора. Полный список
+// по убыванию числа повторений выгружается в CSV или JSON через буферизованный поток.
+class ReportWriter {
+    // Больше повторений - раньше; при равенстве порядок по городу, улице, дому и этажности
+    static final Comparator<Map.Entry<Address, Integer>> BY_COUNT_DESCENDING = (a, b) -> {
+        int result = Integer.compare(b.getValue(), a.getValue());
+        if (result != 0) {
+            return result;
+        }
+        Address x = a.getKey();
+        Address y = b.getKey();
+        result = x.getCity().compareTo(y.getCity());
+        if (result == 0) {
+            result = x.getStreet().compareTo(y.getStreet());
+        }
+        if (result == 0) {
+            result = x.getHouse().compareTo(y.getHouse());
+        }
+        return result != 0 ? result : Integer.compare(x.getFloor(), y.getFloor());
+    };
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final int topK;
+
+    public ReportWriter(int topK) {
+        this.topK = topK;
+    }
+
+    // O(n log k): в куче лежат k лучших записей, в вершине - худшая из них
+    public static List<Map.Entry<Address, Integer>> topDuplicates(Map<Address, Integer> duplicates, int k) {
+        PriorityQueue<Map.Entry<Address, Integer>> heap = new PriorityQueue<>(Math.max(1, k), BY_COUNT_DESCENDING.reversed());
+
+        for (Map.Entry<Address, Integer> entry : duplicates.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (k > 0 && BY_COUNT_DESCENDING.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<Map.Entry<Address, Integer>> top = new ArrayList<>(heap);
+        top.sort(BY_COUNT_DESCENDING);
+        return top;
+    }
+
+    public void printSummary(Map<Address, Integer> duplicates, Map<String, int[]> floorStats) {
+        StringBuilder out = new StringBuilder();
+        out.append("\n=== РЕЗУЛЬТАТЫ СТАТИСТИКИ ===\n");
+
+        out.append("\n--- ДУБЛИРУЮЩИЕСЯ ЗАПИСИ ---\n");
+        if (duplicates.isEmpty()) {
+            out.append("Дубликаты не найдены\n");
+        } else {
+            out.append("Адресов с повторами: ").append(duplicates.size()).append('\n');
+            for (Map.Entry<Address, Integer> entry : topDuplicates(duplicates, topK)) {
+                out.append(entry.getKey()).append(" - повторений: ").append(entry.getValue()).append('\n');
+            }
+            if (duplicates.size() > topK) {
+                out.append("... и ещё ").append(duplicates.size() - topK)
+                        .append(" (полный список: -Daddresses.report=<файл.csv|файл.json>)\n");
+            }
+        }
+
+        out.append("\n--- СТАТИСТИКА ПО ЭТАЖАМ ---\n");
+        for (Map.Entry<String, int[]> entry : new TreeMap<>(floorStats).entrySet()) {
+            int[] floors = entry.getValue();
+            out.append(entry.getKey())
+                    .append(": 1-этажных: ").append(floors[0])
+                    .append(", 2-этажных: ").append(floors[1])
+                    .append(", 3-этажных: ").append(floors[2])
+                    .append(", 4-этажных: ").append(floors[3])
+                    .append(", 5-этажных: ").append(floors[4]).append('\n');
+        }
+
+        System.out.print(out);
+    }
+
+    // Формат выбирается по расширению: .json - JSON, иначе CSV с разделителем ';'
+    public void export(Map<Address, Integer> duplicates, Map<String, int[]> floorStats, Path file) throws IOException {
+        List<Map.Entry<Address, Integer>> sorted = new ArrayList<>(duplicates.entrySet());
+        sorted.sort(BY_COUNT_DESCENDING);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (file.toString().toLowerCase().endsWith(".json")) {
+                writeJson(writer, sorted, floorStats);
+            } else {
+                writeCsv(writer, sorted);
+            }
+        }
+    }
+
+    private static void writeCsv(Writer writer, List<Map.Entry<Address, Integer>> duplicates) throws IOException {
+        writer.write("city;street;house;floor;count\n");
+        for (Map.Entry<Address, Integer> entry : duplicates) {
+            Address address = entry.getKey();
+            writeCsvField(writer, address.getCity());
+            writer.write(';');
+            writeCsvField(writer, address.getStreet());
+            writer.write(';');
+            writeCsvField(writer, address.getHouse());
+            writer.write(';');
+            writer.write(Integer.toString(address.getFloor()));
+            writer.write(';');
+            writer.write(Integer.toString(entry.getValue()));
+            writer.write('\n');
+        }
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        writer.write('"');
+        if (value.indexOf('"') >= 0) {
+            writer.write(value.replace("\"", "\"\""));
+        } else {
+            writer.write(value);
+        }
+        writer.write('"');
+    }
+
+    private static void writeJson(Writer writer, List<Map.Entry<Address, Integer>> duplicates,
+                                  Map<String, int[]> floorStats) throws IOException {
+        writer.write("{\"duplicates\":[");
+        for (int i = 0; i < duplicates.size(); i++) {
+            Address address = duplicates.get(i).getKey();
+            writer.write(i == 0 ? "\n{\"city\":" : ",\n{\"city\":");
+            writeJsonString(writer, address.getCity());
+            writer.write(",\"street\":");
+            writeJsonString(writer, address.getStreet());
+            writer.write(",\"house\":");
+            writeJsonString(writer, address.getHouse());
+            writer.write(",\"floor\":");
+            writer.write(Integer.toString(address.getFloor()));
+            writer.write(",\"count\":");
+            writer.write(Integer.toString(duplicates.get(i).getValue()));
+            writer.write('}');
+        }
+
+        writer.write("\n],\"floors\":{");
+        boolean first = true;
+        for (Map.Entry<String, int[]> entry : new TreeMap<>(floorStats).entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writeJsonString(writer, entry.getKey());
+            writer.write(":[");
+            int[] floors = entry.getValue();
+            for (int j = 0; j < floors.length; j++) {
+                if (j > 0) {
+                    writer.write(',');
+                }
+                writer.write(Integer.toString(floors[j]));
+            }
+            writer.write(']');
+        }
+        writer.write("\n}}\n");
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочный замер поиска: concurrency потоков без пауз вызывают Query.execute (кэш, диспетчер,
+// клиент - всё как в Main) против локальной WikiApiStub с заданной задержкой ответа и долей ошибок.
+// Для каждого уровня параллельности сначала идёт прогрев, затем замер; выводятся запросы в секунду,
+// процентили задержки (вместе с неудачными запросами, они тоже ждут повторов), доля ошибок и попаданий
+// в кэш, а также p50/p99 этапов запроса к серверу из SearchMetrics.
+// Запросы берутся из набора --queries различных строк (0 - каждый запрос новый, кэш не помогает).
+// Ограничение частоты запросов диспетчера по умолчанию отключено (-Dwiki.rateLimit=0).
+//
+// Пример: java SearchBenchmark --concurrency 1,8,64 --latency 50 --errors 0.02 --queries 0
+public class SearchBenchmark {
+    private int[] concurrencyLevels = {1, 8, 32};
+    private long warmupMillis = 2_000;
+    private long durationMillis = 5_000;
+    private long latencyMillis = 20;
+    private double errorRate = 0.01;
+    private int errorStatus = 503;
+    private int queries = 0;
+    private String endpoint;
+
+    private final AtomicLong uniqueQueries = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        SearchBenchmark benchmark = new SearchBenchmark();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--concurrency":
+                    benchmark.concurrencyLevels = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--warmup":
+                    benchmark.warmupMillis = (long) (Double.parseDouble(args[i + 1]) * 1000);
+                    break;
+                case "--duration":
+                    benchmark.durationMillis = (long) (Double.parseDouble(args[i + 1]) * 1000);
+                    break;
+                case "--latency":
+                    benchmark.latencyMillis = Long.parseLong(args[i + 1]);
+                    break;
+                case "--errors":
+                    benchmark.errorRate = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--errorStatus":
+                    benchmark.errorStatus = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--queries":
+                    benchmark.queries = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--endpoint":
+                    benchmark.endpoint = args[i + 1];
+                    break;
+                default:
+                    System.out.println("Неизвестный параметр: " + args[i]);
+                    return;
+            }
+        }
+
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        WikiApiStub stub = null;
+        if (endpoint == null) {
+            stub = new WikiApiStub(0).start();
+            stub.setDelayMillis(latencyMillis);
+            stub.setErrorRate(errorRate, errorStatus);
+            endpoint = stub.getEndpoint().toString();
+            System.out.printf("Заглушка API: %s, задержка %d мс, ошибок %.1f%% (код %d)%n",
+                    endpoint, latencyMillis, errorRate * 100, errorStatus);
+        }
+
+        // до первого обращения к клиенту, кэшу и диспетчеру по умолчанию
+        System.setProperty("wiki.endpoint", endpoint);
+        if (System.getProperty("wiki.cache.dir") == null) {
+            System.setProperty("wiki.cache.dir", "");
+        }
+        if (System.getProperty("wiki.rateLimit") == null) {
+            System.setProperty("wiki.rateLimit", "0");
+        }
+
+        System.out.printf("%8s %9s %10s %9s %9s %9s %9s %8s %8s %15s %15s%n", "Потоков", "Запросов", "запр/с",
+                "p50, мс", "p95, мс", "p99, мс", "max, мс", "Ошибок", "Кэш", "ответ p50/p99", "разбор p50/p99");
+        try {
+            for (int concurrency : concurrencyLevels) {
+                load(concurrency, warmupMillis);
+                measure(concurrency);
+            }
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private void measure(int concurrency) throws InterruptedException {
+        SearchMetrics metrics = WikiSearchClient.getDefault().getMetrics();
+        SearchCache cache = SearchCache.getDefault();
+        metrics.reset();
+        long hitsBefore = cache.getMemoryHits() + cache.getDiskHits();
+        long missesBefore = cache.getMisses();
+
+        long start = System.nanoTime();
+        Result result = load(concurrency, durationMillis);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long hits = cache.getMemoryHits() + cache.getDiskHits() - hitsBefore;
+        long misses = cache.getMisses() - missesBefore;
+        long requests = result.latency.getCount();
+        System.out.printf("%8d %9d %10.1f %9.2f %9.2f %9.2f %9.2f %7.2f%% %7.1f%% %15s %15s%n",
+                concurrency, requests, requests / seconds,
+                result.latency.percentileMillis(50), result.latency.percentileMillis(95),
+                result.latency.percentileMillis(99), result.latency.getMaxMillis(),
+                requests == 0 ? 0 : result.errors.get() * 100.0 / requests,
+                hits + misses == 0 ? 0 : hits * 100.0 / (hits + misses),
+                String.format("%.2f/%.2f", metrics.getHeaders().percentileMillis(50), metrics.getHeaders().percentileMillis(99)),
+                String.format("%.2f/%.2f", metrics.getParse().percentileMillis(50), metrics.getParse().percentileMillis(99)));
+        if (metrics.getFailures() > 0) {
+            System.out.println("         ошибки запросов к серверу (с повторами): " + metrics.getFailuresByKind());
+        }
+    }
+
+    private Result load(int concurrency, long millis) throws InterruptedException {
+        Result result = new Result();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        new Query(nextQuery()).execute();
+                    } catch (SearchException e) {
+                        result.errors.incrementAndGet();
+                    }
+                    result.latency.record(System.nanoTime() - start);
+                }
+            }, "search-benchmark-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return result;
+    }
+
+    private String nextQuery() {
+        long number = queries > 0 ? ThreadLocalRandom.current().nextInt(queries) : uniqueQueries.incrementAndGet();
+        return "запрос " + number;
+    }
+
+    private static class Result {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Кэш результатов поиска в два уровня: LRU в памяти на memoryCapacity записей и каталог на диске,
+// который переживает перезапуск. Ключ - адрес API, запрос без лишних пробелов и без учёта регистра
+// плюс параметры поиска: ответы заглушки (-Dwiki.endpoint) не смешиваются с ответами Википедии. Записи старше ttl не используются и удаляются; пустые результаты живут только
+// emptyTtl, чтобы статья, появившаяся позже, не оставалась ненайденной целые сутки. Если на диске
+// больше diskCapacity файлов, удаляются те, к которым дольше всего не обращались, с запасом в десятую
+// часть: каталог просматривается целиком только при переполнении, а не при каждой записи.
+// WikiSearchResult изменяемый (страницы, загрузка следующей страницы), поэтому кэш хранит свою
+// копию и каждому вызывающему отдаёт отдельную.
+//
+// Настройки: -Dwiki.cache.dir, -Dwiki.cache.memoryEntries, -Dwiki.cache.diskEntries, -Dwiki.cache.ttlMinutes,
+// -Dwiki.cache.emptyTtlMinutes
+class SearchCache {
+    private static final int MAGIC = 0x57534331;
+    private static final int VERSION = 2;
+
+    private static SearchCache defaultCache;
+
+    private final Map<String, Entry> memory;
+    private final Path directory;
+    private final int diskCapacity;
+    private final long ttlMillis;
+    private final long emptyTtlMillis;
+
+    // число файлов в каталоге по подсчёту этого процесса; -1 - ещё не посчитано
+    private final AtomicInteger diskEntries = new AtomicInteger(-1);
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SearchCache(int memoryCapacity, Path directory, int diskCapacity, long ttlMillis, long emptyTtlMillis) {
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > memoryCapacity;
+            }
+        };
+        this.directory = directory;
+        this.diskCapacity = diskCapacity;
+        this.ttlMillis = ttlMillis;
+        this.emptyTtlMillis = Math.min(emptyTtlMillis, ttlMillis);
+    }
+
+    public static synchronized SearchCache getDefault() {
+        if (defaultCache == null) {
+            String directory = System.getProperty("wiki.cache.dir",
+                    Paths.get(System.getProperty("user.home"), ".wikisearch-cache").toString());
+            defaultCache = new SearchCache(
+                    Integer.getInteger("wiki.cache.memoryEntries", 256),
+                    directory.isEmpty() ? null : Paths.get(directory),
+                    Integer.getInteger("wiki.cache.diskEntries", 2000),
+                    Long.getLong("wiki.cache.ttlMinutes", 24 * 60) * 60_000,
+                    Long.getLong("wiki.cache.emptyTtlMinutes", 10) * 60_000);
+        }
+        return defaultCache;
+    }
+
+    // Пробельные символы подряд считаются одним пробелом, по краям отбрасываются
+    public static String key(URI endpoint, String query, int limit, int offset) {
+        StringBuilder key = new StringBuilder(endpoint.toString()).append('|');
+        int start = key.length();
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > start;
+            } else {
+                if (space) {
+                    key.append(' ');
+                    space = false;
+                }
+                key.append(Character.toLowerCase(c));
+            }
+        }
+        return key.append("|limit=").append(limit).append("|offset=").append(offset).toString();
+    }
+
+    // Свежая запись из кэша или результат loader, который затем сохраняется в кэш
+    public CompletableFuture<WikiSearchResult> get(String key, Supplier<CompletableFuture<WikiSearchResult>> loader) {
+        WikiSearchResult cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        misses.incrementAndGet();
+        // один и тот же результат загрузчика (single-flight) может достаться нескольким вызывающим
+        CompletableFuture<WikiSearchResult> request = loader.get();
+        return WikiSearchClient.cancelling(request, request.thenApply(result -> {
+            put(key, result);
+            return result.copy();
+        }));
+    }
+
+    // Копия записи; null - записи нет или она устарела
+    public WikiSearchResult lookup(String key) {
+        long now = System.currentTimeMillis();
+
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null && isFresh(entry, now)) {
+                memoryHits.incrementAndGet();
+                return entry.result.copy();
+            }
+            if (entry != null) {
+                memory.remove(key);
+            }
+        }
+
+        Entry entry = readFromDisk(key, now);
+        if (entry == null) {
+            return null;
+        }
+
+        diskHits.incrementAndGet();
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        return entry.result.copy();
+    }
+
+    public void put(String key, WikiSearchResult result) {
+        Entry entry = new Entry(result.copy(), System.currentTimeMillis());
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+
+        if (directory != null) {
+            try {
+                writeToDisk(key, entry);
+            } catch (IOException e) {
+                System.out.println("Не удалось сохранить результат в кэш: " + e.getMessage());
+            }
+        }
+    }
+
+    public long getMemoryHits() { return memoryHits.get(); }
+    public long getDiskHits() { return diskHits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    public void printStatistics() {
+        System.out.println("Кэш поиска: попаданий в памяти " + memoryHits.get() + ", на диске " + diskHits.get()
+                + ", промахов " + misses.get());
+    }
+
+    private boolean isFresh(Entry entry, long now) {
+        return now - entry.storedAt <= (entry.result.getResults().isEmpty() ? emptyTtlMillis : ttlMillis);
+    }
+
+    private Entry readFromDisk(String key, long now) {
+        if (directory == null) {
+            return null;
+        }
+
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        Entry entry;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(key)) {
+                return null;
+            }
+
+            long storedAt = input.readLong();
+            WikiSearchResult result = new WikiSearchResult(input.readUTF());
+            result.setPaging(input.readInt(), input.readInt(), input.readInt(), input.readInt());
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                result.addResult(new SearchItems(input.readUTF(), input.readInt()));
+            }
+            entry = new Entry(result, storedAt);
+        } catch (IOException e) {
+            return null;
+        }
+
+        // срок записи зависит от того, пустая ли она, поэтому проверяется после чтения, когда файл уже закрыт
+        try {
+            if (!isFresh(entry, now)) {
+                if (Files.deleteIfExists(file)) {
+                    diskEntries.decrementAndGet();
+                }
+                return null;
+            }
+            // время изменения файла - время последнего обращения, по нему выбираются файлы на удаление
+            Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(now));
+        } catch (IOException e) {
+            return null;
+        }
+        return entry;
+    }
+
+    private void writeToDisk(String key, Entry entry) throws IOException {
+        Files.createDirectories(directory);
+        Path file = fileFor(key);
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(key);
+            output.writeLong(entry.storedAt);
+            output.writeUTF(entry.result.getQuery());
+            output.writeInt(entry.result.getOffset());
+            output.writeInt(entry.result.getPageSize());
+            output.writeInt(entry.result.getNextOffset());
+            output.writeInt(entry.result.getTotalHits());
+            output.writeInt(entry.result.getResults().size());
+            for (SearchItems item : entry.result.getResults()) {
+                output.writeUTF(item.getTitle());
+                output.writeInt(item.getPageId());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        boolean replaced = Files.exists(file);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        int entries = diskEntries.get();
+        if (entries < 0) {
+            entries = listEntries().size();
+            diskEntries.set(entries);
+        } else if (!replaced) {
+            entries = diskEntries.incrementAndGet();
+        }
+        if (entries > diskCapacity) {
+            evictFromDisk();
+        }
+    }
+
+    private List<Path> listEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*.entry")) {
+            for (Path file : entries) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    // Оставляет diskCapacity - diskCapacity / 10 файлов и заодно сверяет счётчик с каталогом,
+    // в который могут писать и другие процессы
+    private synchronized void evictFromDisk() throws IOException {
+        List<Path> files = listEntries();
+        int keep = diskCapacity - diskCapacity / 10;
+        if (files.size() <= diskCapacity) {
+            diskEntries.set(files.size());
+            return;
+        }
+
+        Map<Path, Long> accessed = new HashMap<>();
+        for (Path file : files) {
+            try {
+                accessed.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                accessed.put(file, 0L);
+            }
+        }
+        files.sort(Comparator.comparing(accessed::get));
+        int remaining = files.size();
+        for (int i = 0; i < files.size() - keep; i++) {
+            if (Files.deleteIfExists(files.get(i))) {
+                remaining--;
+            }
+        }
+        diskEntries.set(remaining);
+    }
+
+    private Path fileFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return directory.resolve(name + ".entry");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        final WikiSearchResult result;
+        final long storedAt;
+
+        Entry(WikiSearchResult result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Диспетчер запросов к API перед WikiSearchClient:
+// - одинаковые запросы, отправленные одновременно, выполняются один раз (single-flight);
+// - частота запросов ограничена корзиной токенов; если сервер просит подождать, частота
+//   уменьшается вдвое, а после успешных ответов постепенно растёт обратно;
+// - сбои, которые имеет смысл повторить, повторяются с экспоненциальной паузой со случайным
+//   разбросом, а если сервер назвал паузу в Retry-After, выдерживается она.
+// Все ошибки приходят как SearchException.
+//
+// Настройки: -Dwiki.rateLimit (запросов в секунду), -Dwiki.maxAttempts
+class SearchDispatcher {
+    private static final long BASE_BACKOFF_MILLIS = 250;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private static SearchDispatcher defaultDispatcher;
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final TokenBucket limiter;
+    private final int maxAttempts;
+
+    public SearchDispatcher(double requestsPerSecond, int maxAttempts) {
+        this.limiter = new TokenBucket(requestsPerSecond);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public static synchronized SearchDispatcher getDefault() {
+        if (defaultDispatcher == null) {
+            double rate = Double.parseDouble(System.getProperty("wiki.rateLimit", "10"));
+            defaultDispatcher = new SearchDispatcher(rate, Integer.getInteger("wiki.maxAttempts", 4));
+        }
+        return defaultDispatcher;
+    }
+
+    public double getCurrentRate() {
+        return limiter.getRate();
+    }
+
+    // Результат для каждого вызывающего свой: отмена одного не мешает остальным,
+    // а сам запрос отменяется, когда его перестали ждать все. Ключи разных видов запросов
+    // не должны совпадать: по одному ключу ждут результат одного типа
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Supplier<CompletableFuture<T>> request) {
+        while (true) {
+            Flight flight = inFlight.computeIfAbsent(key, k -> new Flight());
+            if (!flight.join()) {
+                // запрос уже отменён последним ожидающим, но ещё не убран из таблицы
+                inFlight.remove(key, flight);
+                continue;
+            }
+
+            if (flight.started.compareAndSet(false, true)) {
+                // запрос убирается из таблицы раньше, чем результат увидят ожидающие: иначе
+                // повторный вызов сразу после ошибки получил бы ту же ошибку, а не новый запрос
+                CompletableFuture<Object> call = withRetries((Supplier<CompletableFuture<Object>>) (Supplier<?>) request);
+                flight.ready.complete(WikiSearchClient.cancelling(call,
+                        call.whenComplete((value, error) -> inFlight.remove(key, flight))));
+            }
+
+            CompletableFuture<T> caller = flight.ready.thenCompose(result -> (CompletableFuture<T>) result);
+            caller.whenComplete((value, error) -> {
+                if (caller.isCancelled()) {
+                    flight.leave();
+                }
+            });
+            return caller;
+        }
+    }
+
+    private <T> CompletableFuture<T> withRetries(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        result.whenComplete((value, error) -> {
+            CompletableFuture<?> attempt = current.get();
+            if (result.isCancelled() && attempt != null) {
+                attempt.cancel(true);
+            }
+        });
+
+        attempt(request, 1, 0, result, current);
+        return result;
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> request, int number, long pauseMillis,
+                             CompletableFuture<T> result, AtomicReference<CompletableFuture<?>> current) {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(pauseMillis) + limiter.reserve();
+        Executor delayed = CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS);
+
+        // current указывает на паузу до того, как запрос может начаться: иначе запись после
+        // thenCompose затёрла бы уже идущий HTTP-запрос, и отмена его не достала бы
+        CompletableFuture<Void> pause = CompletableFuture.runAsync(() -> { }, delayed);
+        current.set(pause);
+
+        CompletableFuture<T> call = pause.thenCompose(ignored -> {
+            if (result.isDone()) {
+                return CompletableFuture.<T>completedFuture(null);
+            }
+            CompletableFuture<T> response = request.get();
+            current.set(response);
+            // отмена могла прийти между проверкой выше и записью в current
+            if (result.isCancelled()) {
+                response.cancel(true);
+            }
+            return response;
+        });
+
+        call.whenComplete((value, error) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (error == null) {
+                limiter.onSuccess();
+                result.complete(value);
+                return;
+            }
+
+            SearchException failure = SearchException.from(error);
+            if (failure.getKind() == SearchException.Kind.THROTTLED) {
+                limiter.onThrottled();
+            }
+            if (!failure.isRetryable() || number >= maxAttempts) {
+                result.completeExceptionally(failure);
+                return;
+            }
+
+            attempt(request, number + 1, backoffMillis(number, failure), result, current);
+        });
+    }
+
+    // Пауза, названная сервером, или случайная в пределах экспоненциально растущего окна
+    private static long backoffMillis(int attempt, SearchException failure) {
+        if (failure.getRetryAfterMillis() >= 0) {
+            return Math.min(failure.getRetryAfterMillis(), MAX_BACKOFF_MILLIS);
+        }
+        long window = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(window / 2, window + 1);
+    }
+
+    private static class Flight {
+        final AtomicBoolean started = new AtomicBoolean();
+        final CompletableFuture<CompletableFuture<Object>> ready = new CompletableFuture<>();
+        final AtomicInteger waiters = new AtomicInteger();
+
+        // false - запрос уже отменён, к нему нельзя присоединиться
+        boolean join() {
+            while (true) {
+                int count = waiters.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void leave() {
+            if (waiters.decrementAndGet() == 0 && waiters.compareAndSet(0, -1)) {
+                ready.thenAccept(result -> result.cancel(true));
+            }
+        }
+    }
+}
+
+// Корзина токенов с изменяемой частотой пополнения (AIMD): при отказе сервера частота
+// уменьшается вдвое, после каждого успешного ответа растёт на двадцатую часть исходной
+class TokenBucket {
+    private final double maxRate;
+    private final double minRate;
+    private final double capacity;
+    private double rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    TokenBucket(double requestsPerSecond) {
+        this.maxRate = requestsPerSecond;
+        this.minRate = requestsPerSecond / 32;
+        this.capacity = Math.max(1, requestsPerSecond);
+        this.rate = requestsPerSecond;
+        this.tokens = capacity;
+    }
+
+    // Берёт токен в долг и возвращает, сколько наносекунд ждать, пока долг покроется
+    synchronized long reserve() {
+        if (maxRate <= 0) {
+            return 0;
+        }
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+    }
+
+    synchronized void onThrottled() {
+        refill();
+        rate = Math.max(minRate, rate / 2);
+    }
+
+    synchronized void onSuccess() {
+        refill();
+        rate = Math.min(maxRate, rate + maxRate / 20);
+    }
+
+    synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / 1e9 * rate);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+// Неудачный поиск с причиной: нет сети, истекло время ожидания, сервер просит подождать
+// (код 429 или ошибка API maxlag), сбой на стороне сервера (в том числе ответ, который не удалось
+// разобрать), ошибка в самом запросе или ошибка в коде программы (INTERNAL).
+// Повторять имеет смысл все, кроме ошибок запроса и программы; retryAfterMillis - пауза, которую
+// назвал сервер в Retry-After, или -1.
+class SearchException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    enum Kind {
+        NETWORK("нет соединения с сервером"),
+        TIMEOUT("сервер не ответил вовремя"),
+        THROTTLED("сервер просит сократить число запросов"),
+        SERVER("ошибка на стороне сервера"),
+        API("сервер отклонил запрос"),
+        CANCELLED("запрос отменён"),
+        INTERNAL("внутренняя ошибка программы");
+
+        private final String description;
+
+        Kind(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final Kind kind;
+    private final long retryAfterMillis;
+
+    public SearchException(Kind kind, String message, long retryAfterMillis, Throwable cause) {
+        super(message, cause);
+        this.kind = kind;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public SearchException(Kind kind, String message, long retryAfterMillis) {
+        this(kind, message, retryAfterMillis, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public boolean isRetryable() {
+        return kind == Kind.NETWORK || kind == Kind.TIMEOUT || kind == Kind.THROTTLED || kind == Kind.SERVER;
+    }
+
+    @Override
+    public String getMessage() {
+        String details = super.getMessage();
+        return kind.getDescription() + (details != null && !details.isEmpty() ? " (" + details + ")" : "");
+    }
+
+    // Ошибка по коду HTTP-ответа
+    public static SearchException forStatus(int status, long retryAfterMillis) {
+        String message = "код ответа " + status;
+        if (status == 429) {
+            return new SearchException(Kind.THROTTLED, message, retryAfterMillis);
+        }
+        if (status >= 500) {
+            return new SearchException(status == 503 && retryAfterMillis >= 0 ? Kind.THROTTLED : Kind.SERVER,
+                    message, retryAfterMillis);
+        }
+        return new SearchException(Kind.API, message, -1);
+    }
+
+    // Ошибка из поля "error" ответа API
+    public static SearchException forApiError(String code, String info, long retryAfterMillis) {
+        boolean throttled = code.equals("maxlag") || code.equals("ratelimited");
+        return new SearchException(throttled ? Kind.THROTTLED : Kind.API, (code + " " + info).trim(),
+                throttled ? retryAfterMillis : -1);
+    }
+
+    // Ответ сервера, который не удалось разобрать
+    public static SearchException malformedResponse(String details, Throwable cause) {
+        return new SearchException(Kind.SERVER, "некорректный ответ: " + details, -1, cause);
+    }
+
+    // Приводит ошибку из CompletableFuture к SearchException. Ошибки разбора ответа приходят
+    // уже как SearchException из WikiSearchClient; всё незнакомое - ошибка программы, её не повторяют
+    public static SearchException from(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException
+                || error instanceof UncheckedIOException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        if (error instanceof SearchException) {
+            return (SearchException) error;
+        }
+        if (error instanceof CancellationException) {
+            return new SearchException(Kind.CANCELLED, null, -1, error);
+        }
+        if (error instanceof com.google.gson.stream.MalformedJsonException || error instanceof com.google.gson.JsonParseException) {
+            return malformedResponse(error.getMessage(), error);
+        }
+        if (error instanceof HttpTimeoutException) {
+            return new SearchException(Kind.TIMEOUT, error.getMessage(), -1, error);
+        }
+        if (error instanceof IOException) {
+            String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+            return new SearchException(Kind.NETWORK, message, -1, error);
+        }
+        return new SearchException(Kind.INTERNAL, error.toString(), -1, error);
+    }
+}
@@ -0,0 +1,124 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Замеры запросов WikiSearchClient по этапам:
+// - headers - от отправки запроса до заголовков ответа (установка соединения, если его нет
+//   в пуле, отправка и ожидание сервера; отдельно время соединения HttpClient не сообщает);
+// - parse - чтение тела ответа, распаковка и разбор JSON;
+// - total - весь запрос.
+// Плюс число запросов, ошибок по видам и попаданий в кэш поиска. Клиент по умолчанию
+// регистрирует свои замеры в JMX.
+class SearchMetrics implements SearchMetricsMXBean {
+    static final String OBJECT_NAME = "wikisearch:type=SearchClient";
+
+    private final LatencyHistogram headers = new LatencyHistogram();
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final Map<SearchException.Kind, LongAdder> failures = new EnumMap<>(SearchException.Kind.class);
+
+    public SearchMetrics() {
+        for (SearchException.Kind kind : SearchException.Kind.values()) {
+            failures.put(kind, new LongAdder());
+        }
+    }
+
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("Не удалось зарегистрировать замеры поиска в JMX: " + e.getMessage());
+        }
+    }
+
+    public void recordHeaders(long nanos) {
+        headers.record(nanos);
+    }
+
+    public void recordParse(long nanos) {
+        parse.record(nanos);
+    }
+
+    public void recordRequest(long nanos, Throwable error) {
+        requests.increment();
+        total.record(nanos);
+        if (error != null) {
+            failures.get(SearchException.from(error).getKind()).increment();
+        }
+    }
+
+    public LatencyHistogram getHeaders() { return headers; }
+    public LatencyHistogram getParse() { return parse; }
+    public LatencyHistogram getTotal() { return total; }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        long sum = 0;
+        for (LongAdder count : failures.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByKind() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<SearchException.Kind, LongAdder> entry : failures.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        addPercentiles(result, "headers", headers);
+        addPercentiles(result, "parse", parse);
+        addPercentiles(result, "total", total);
+        return result;
+    }
+
+    // кэш общий для всех клиентов, поэтому здесь счётчики кэша по умолчанию
+    @Override
+    public long getCacheMemoryHits() {
+        return SearchCache.getDefault().getMemoryHits();
+    }
+
+    @Override
+    public long getCacheDiskHits() {
+        return SearchCache.getDefault().getDiskHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return SearchCache.getDefault().getMisses();
+    }
+
+    @Override
+    public void reset() {
+        headers.reset();
+        parse.reset();
+        total.reset();
+        requests.reset();
+        for (LongAdder count : failures.values()) {
+            count.reset();
+        }
+    }
+
+    private static void addPercentiles(Map<String, Double> result, String phase, LatencyHistogram histogram) {
+        result.put(phase + ".p50", histogram.percentileMillis(50));
+        result.put(phase + ".p95", histogram.percentileMillis(95));
+        result.put(phase + ".p99", histogram.percentileMillis(99));
+        result.put(phase + ".max", histogram.getMaxMillis());
+    }
+}
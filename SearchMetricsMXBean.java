@@ -0,0 +1,22 @@
+import java.util.Map;
+
+// Замеры клиента поиска для JMX (jconsole, VisualVM): объект wikisearch:type=SearchClient
+public interface SearchMetricsMXBean {
+    long getRequests();
+
+    long getFailures();
+
+    // число неудачных запросов по видам SearchException.Kind
+    Map<String, Long> getFailuresByKind();
+
+    // процентили по этапам, в миллисекундах: "headers.p50", "parse.p99", "total.max", ...
+    Map<String, Double> getLatencyMillis();
+
+    long getCacheMemoryHits();
+
+    long getCacheDiskHits();
+
+    long getCacheMisses();
+
+    void reset();
+}
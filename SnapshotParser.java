@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Читает адреса из двоичного снимка рядом с исходным файлом (<файл>.snapshot), отображая его в память.
+// Если снимка нет, он повреждён или исходный файл изменился, разбирает файл через обычный парсер
+// и записывает снимок заново, чтобы следующие запуски обходились без разбора текста.
+//
+// Формат снимка (big-endian):
+//   int magic, int version, long время изменения источника, long размер источника,
+//   int число записей, три словаря (город, улица, дом): int число строк, затем int длина + UTF-8,
+//   четыре столбца int[число записей]: город, улица, дом, этаж,
+//   long CRC32 всего, что записано до него.
+class SnapshotParser extends FileParser {
+    private static final int MAGIC = 0x41445253;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int CHECKSUM_SIZE = 8;
+
+    private final FileParser sourceParser;
+
+    public SnapshotParser(FileParser sourceParser) {
+        this.sourceParser = sourceParser;
+    }
+
+    // Некорректные строки в снимок не попадают, поэтому при чтении из снимка их число равно нулю
+    @Override
+    public long getMalformedCount() {
+        return sourceParser.getMalformedCount();
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return sourceParser.hasFailed();
+    }
+
+    // Снимок отображается в память, так что учитывается только чтение исходного файла
+    @Override
+    public long getReadNanos() {
+        return sourceParser.getReadNanos();
+    }
+
+    public static Path snapshotPath(String filePath) {
+        return Paths.get(filePath + ".snapshot");
+    }
+
+    @Override
+    public void parse(String filePath, Consumer<Address> consumer) {
+        Path source = Paths.get(filePath);
+        Path snapshot = snapshotPath(filePath);
+
+        if (Files.isRegularFile(source) && Files.isRegularFile(snapshot)) {
+            try {
+                if (readSnapshot(snapshot, source, consumer)) {
+                    return;
+                }
+            } catch (IOException e) {
+                System.out.println("Не удалось прочитать снимок, файл будет разобран заново.");
+            }
+        }
+
+        // время и размер берутся до разбора: если файл изменят во время чтения, снимок сразу устареет
+        long sourceModified;
+        long sourceSize;
+        try {
+            sourceModified = Files.getLastModifiedTime(source).toMillis();
+            sourceSize = Files.size(source);
+        } catch (IOException e) {
+            sourceParser.parse(filePath, consumer);
+            return;
+        }
+
+        // если потребитель сам собирает адреса в пустое хранилище, снимок пишется прямо из него
+        AddressStore store;
+        if (consumer instanceof AddressStore && ((AddressStore) consumer).size() == 0) {
+            store = (AddressStore) consumer;
+            sourceParser.parse(filePath, store);
+        } else {
+            store = new AddressStore();
+            sourceParser.parse(filePath, consumer.andThen(store));
+        }
+
+        // после ошибки чтения в хранилище только часть файла - такой снимок выдавал бы её за весь файл
+        if (store.size() > 0 && !sourceParser.hasFailed()) {
+            try {
+                writeSnapshot(store, snapshot, sourceModified, sourceSize);
+            } catch (IOException e) {
+                System.out.println("Не удалось сохранить снимок: " + e.getMessage());
+            }
+        }
+    }
+
+    // false - снимок устарел или повреждён, и ни одна запись не была передана потребителю
+    private static boolean readSnapshot(Path snapshot, Path source, Consumer<Address> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE) {
+                return false;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != Files.getLastModifiedTime(source).toMillis()
+                    || buffer.getLong() != Files.size(source)) {
+                return false;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(0).limit((int) size - CHECKSUM_SIZE));
+            if (buffer.getLong((int) size - CHECKSUM_SIZE) != crc.getValue()) {
+                System.out.println("Контрольная сумма снимка не совпала, файл будет разобран заново.");
+                return false;
+            }
+
+            int records = buffer.getInt();
+            String[] cities = readDictionary(buffer);
+            String[] streets = readDictionary(buffer);
+            String[] houses = readDictionary(buffer);
+
+            int columns = buffer.position();
+            int streetColumn = columns + records * 4;
+            int houseColumn = streetColumn + records * 4;
+            int floorColumn = houseColumn + records * 4;
+
+            for (int i = 0; i < records; i++) {
+                int offset = i * 4;
+                consumer.accept(new Address(
+                        cities[buffer.getInt(columns + offset)],
+                        streets[buffer.getInt(streetColumn + offset)],
+                        houses[buffer.getInt(houseColumn + offset)],
+                        buffer.getInt(floorColumn + offset)));
+            }
+            return true;
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer) {
+        String[] values = new String[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    static void writeSnapshot(AddressStore store, Path snapshot, long sourceModified, long sourceSize)
+            throws IOException {
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try {
+            writeColumns(store, temporary, sourceModified, sourceSize);
+            if (Files.size(temporary) > Integer.MAX_VALUE) {
+                throw new IOException("снимок больше 2 ГБ не поддерживается");
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static void writeColumns(AddressStore store, Path temporary, long sourceModified, long sourceSize)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024), crc))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(sourceModified);
+            output.writeLong(sourceSize);
+            output.writeInt(store.size());
+
+            output.writeInt(store.getCityCount());
+            for (int id = 0; id < store.getCityCount(); id++) {
+                writeString(output, store.getCity(id));
+            }
+            output.writeInt(store.getStreetCount());
+            for (int id = 0; id < store.getStreetCount(); id++) {
+                writeString(output, store.getStreet(id));
+            }
+            output.writeInt(store.getHouseCount());
+            for (int id = 0; id < store.getHouseCount(); id++) {
+                writeString(output, store.getHouse(id));
+            }
+
+            for (int row = 0; row < store.size(); row++) {
+                output.writeInt(store.getCityId(row));
+            }
+            for (int row = 0; row < store.size(); row++) {
+                output.writeInt(store.getStreetId(row));
+            }
+            for (int row = 0; row < store.size(); row++) {
+                output.writeInt(store.getHouseId(row));
+            }
+            for (int row = 0; row < store.size(); row++) {
+                output.writeInt(store.getFloor(row));
+            }
+
+            // сама контрольная сумма в подсчёт не входит
+            long checksum = crc.getValue();
+            output.writeLong(checksum);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
@@ -0,0 +1,397 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+// Поиск по заголовкам без сети: обратный индекс, построенный по выгрузке заголовков Википедии
+// (all-titles-in-ns0, all-titles или файл "page_id<TAB>заголовок", в том числе сжатый .gz).
+// Индекс - один файл, который отображается в память: список статей, отсортированный словарь
+// слов и для каждого слова номера статей, записанные разностями в переменной длине.
+// Слова приводятся к нижнему регистру, "ё" считается "е"; каждое слово запроса ищется как
+// начало слова заголовка, а результаты - статьи, где нашлись все слова, сначала короткие.
+//
+// Построение: java TitleIndex ruwiki-latest-all-titles-in-ns0.gz titles.idx
+// Использование: java -Dwiki.titleIndex=titles.idx Main
+class TitleIndex {
+    private static final int MAGIC = 0x57544931;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 9 * 4;
+    // столько слов словаря самое большее объединяется для одного короткого префикса
+    private static final int MAX_PREFIX_TERMS = 100_000;
+
+    private static TitleIndex defaultIndex;
+    private static boolean defaultLoaded;
+
+    private final ByteBuffer buffer;
+    private final int documentCount;
+    private final int termCount;
+    private final int documentsOffset;
+    private final int termIndexOffset;
+    private final int postingsOffset;
+
+    private TitleIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("файл не является индексом заголовков");
+        }
+        this.documentCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.documentsOffset = buffer.getInt(16);
+        this.termIndexOffset = buffer.getInt(24);
+        this.postingsOffset = buffer.getInt(32);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: TitleIndex <выгрузка заголовков> <файл индекса>");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int documents = build(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Проиндексировано заголовков: " + documents + " за "
+                + (System.currentTimeMillis() - start) + " мс");
+    }
+
+    public static TitleIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new TitleIndex(buffer);
+        }
+    }
+
+    // Индекс из -Dwiki.titleIndex; null - не задан или не открывается
+    public static synchronized TitleIndex getDefault() {
+        if (!defaultLoaded) {
+            defaultLoaded = true;
+            String path = System.getProperty("wiki.titleIndex");
+            if (path != null && !path.isEmpty()) {
+                try {
+                    defaultIndex = open(Paths.get(path));
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Не удалось открыть индекс заголовков: " + e.getMessage());
+                }
+            }
+        }
+        return defaultIndex;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    // Приведение к одному регистру: заглавные и строчные, "ё" и "е" не различаются
+    static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    // Слова - последовательности букв и цифр, уже приведённые fold
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    public WikiSearchResult search(String query, int limit, int offset) {
+        WikiSearchResult result = new WikiSearchResult(query);
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            result.setPaging(offset, limit, -1, 0);
+            return result;
+        }
+
+        BitSet matches = null;
+        for (String token : tokens) {
+            BitSet documents = documentsWithPrefix(token.getBytes(StandardCharsets.UTF_8));
+            if (matches == null) {
+                matches = documents;
+            } else {
+                matches.and(documents);
+            }
+            if (matches.isEmpty()) {
+                break;
+            }
+        }
+
+        // лучшие offset + limit статей: короче заголовок - выше, при равной длине - в порядке выгрузки
+        int wanted = offset + limit;
+        PriorityQueue<Long> best = new PriorityQueue<>(Math.max(1, wanted), Comparator.reverseOrder());
+        for (int document = matches.nextSetBit(0); document >= 0; document = matches.nextSetBit(document + 1)) {
+            long key = (long) titleLength(document) << 32 | document;
+            if (best.size() < wanted) {
+                best.add(key);
+            } else if (wanted > 0 && key < best.peek()) {
+                best.poll();
+                best.add(key);
+            }
+        }
+
+        List<Long> ordered = new ArrayList<>(best);
+        Collections.sort(ordered);
+        for (int i = offset; i < ordered.size(); i++) {
+            int document = (int) (long) ordered.get(i);
+            result.addResult(new SearchItems(title(document), pageId(document)));
+        }
+
+        int totalHits = matches.cardinality();
+        result.setPaging(offset, limit, offset + limit < totalHits ? offset + limit : -1, totalHits);
+        return result;
+    }
+
+    private BitSet documentsWithPrefix(byte[] prefix) {
+        BitSet documents = new BitSet(documentCount);
+        int expanded = 0;
+        for (int term = lowerBound(prefix); term < termCount && expanded < MAX_PREFIX_TERMS; term++, expanded++) {
+            if (!startsWith(term, prefix)) {
+                break;
+            }
+
+            int position = postingsOffset + buffer.getInt(termIndexOffset + term * 8 + 4);
+            int end = postingsOffset + buffer.getInt(termIndexOffset + (term + 1) * 8 + 4);
+            int document = 0;
+            while (position < end) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                document += delta;
+                documents.set(document);
+            }
+        }
+        return documents;
+    }
+
+    // Первое слово словаря, не меньшее prefix по байтам UTF-8
+    private int lowerBound(byte[] prefix) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTerm(middle, prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compareTerm(int term, byte[] value) {
+        int position = buffer.getInt(termIndexOffset + term * 8);
+        int length = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        for (int i = 0; i < length && i < value.length; i++) {
+            int difference = (buffer.get(position + i) & 0xFF) - (value[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - value.length;
+    }
+
+    private boolean startsWith(int term, byte[] prefix) {
+        int position = buffer.getInt(termIndexOffset + term * 8);
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + 2 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int pageId(int document) {
+        return buffer.getInt(documentsOffset + document * 8);
+    }
+
+    private int titleLength(int document) {
+        return buffer.getShort(buffer.getInt(documentsOffset + document * 8 + 4)) & 0xFFFF;
+    }
+
+    private String title(int document) {
+        int position = buffer.getInt(documentsOffset + document * 8 + 4);
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Возвращает число проиндексированных заголовков
+    public static int build(Path dump, Path indexFile) throws IOException {
+        List<byte[]> titles = new ArrayList<>();
+        IntList pageIds = new IntList();
+        Map<String, IntList> postings = new HashMap<>();
+
+        InputStream in = Files.newInputStream(dump);
+        if (dump.toString().toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                int pageId = 0;
+                String title = tab < 0 ? line : line.substring(tab + 1);
+                if (tab > 0) {
+                    try {
+                        pageId = Integer.parseInt(line.substring(0, tab));
+                    } catch (NumberFormatException e) {
+                        // all-titles: первый столбец - пространство имён, а не номер страницы
+                    }
+                }
+
+                title = title.replace('_', ' ').trim();
+                byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+                if (title.isEmpty() || titleBytes.length > 0xFFFF || title.equals("page title")
+                        || title.equals("page_title")) {
+                    continue;
+                }
+
+                int document = titles.size();
+                titles.add(titleBytes);
+                pageIds.add(pageId);
+                for (String token : new LinkedHashSet<>(tokenize(title))) {
+                    postings.computeIfAbsent(token, key -> new IntList()).add(document);
+                }
+            }
+        }
+
+        List<byte[]> terms = new ArrayList<>();
+        Map<byte[], IntList> termPostings = new IdentityHashMap<>();
+        for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+            byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (term.length <= 0xFFFF) {
+                terms.add(term);
+                termPostings.put(term, entry.getValue());
+            }
+        }
+        postings.clear();
+        terms.sort(Arrays::compareUnsigned);
+
+        writeIndex(indexFile, titles, pageIds, terms, termPostings);
+        return titles.size();
+    }
+
+    private static void writeIndex(Path indexFile, List<byte[]> titles, IntList pageIds, List<byte[]> terms,
+                                   Map<byte[], IntList> termPostings) throws IOException {
+        int documentsOffset = HEADER_SIZE;
+        long titlesOffset = documentsOffset + 8L * titles.size();
+        long titlesSize = 0;
+        for (byte[] title : titles) {
+            titlesSize += 2 + title.length;
+        }
+        long termIndexOffset = titlesOffset + titlesSize;
+        long termsOffset = termIndexOffset + 8L * (terms.size() + 1);
+        long termsSize = 0;
+        for (byte[] term : terms) {
+            termsSize += 2 + term.length;
+        }
+        long postingsOffset = termsOffset + termsSize;
+
+        ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+        int[] postingStarts = new int[terms.size() + 1];
+        for (int i = 0; i < terms.size(); i++) {
+            postingStarts[i] = postingBytes.size();
+            IntList documents = termPostings.get(terms.get(i));
+            int previous = 0;
+            for (int j = 0; j < documents.size(); j++) {
+                int delta = documents.get(j) - previous;
+                previous = documents.get(j);
+                while ((delta & ~0x7F) != 0) {
+                    postingBytes.write((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                postingBytes.write(delta);
+            }
+        }
+        postingStarts[terms.size()] = postingBytes.size();
+
+        if (postingsOffset + postingBytes.size() > Integer.MAX_VALUE) {
+            throw new IOException("индекс больше 2 ГБ не поддерживается");
+        }
+
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 256 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(titles.size());
+            output.writeInt(terms.size());
+            output.writeInt(documentsOffset);
+            output.writeInt((int) titlesOffset);
+            output.writeInt((int) termIndexOffset);
+            output.writeInt((int) termsOffset);
+            output.writeInt((int) postingsOffset);
+
+            int titlePosition = (int) titlesOffset;
+            for (int i = 0; i < titles.size(); i++) {
+                output.writeInt(pageIds.get(i));
+                output.writeInt(titlePosition);
+                titlePosition += 2 + titles.get(i).length;
+            }
+            for (byte[] title : titles) {
+                output.writeShort(title.length);
+                output.write(title);
+            }
+
+            int termPosition = (int) termsOffset;
+            for (int i = 0; i < terms.size(); i++) {
+                output.writeInt(termPosition);
+                output.writeInt(postingStarts[i]);
+                termPosition += 2 + terms.get(i).length;
+            }
+            output.writeInt(termPosition);
+            output.writeInt(postingStarts[terms.size()]);
+
+            for (byte[] term : terms) {
+                output.writeShort(term.length);
+                output.write(term);
+            }
+            postingBytes.writeTo(output);
+        }
+
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
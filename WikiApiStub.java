@@ -0,0 +1,259 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Локальная замена API Википедии на com.sun.net.httpserver для проверки клиента без сети.
+// На запрос action=query&list=search отвечает totalHits выдуманными статьями "<запрос> N"
+// в формате настоящего API, с лишними полями, которые клиенту не нужны; на prop=extracts -
+// выдуманными вводными абзацами для каждой запрошенной страницы (не больше setExtractsLimit
+// за ответ, остальные страницы - без extract и с continue.excontinue). Если клиент принимает
+// gzip, ответ сжимается, как у настоящего сервера. Через failNext можно заставить заглушку
+// отказать в нескольких следующих запросах, например кодом 429 с Retry-After или ошибкой maxlag,
+// а через setErrorRate - в случайной доле запросов.
+//
+// Запуск: java WikiApiStub [порт], затем java -Dwiki.endpoint=http://127.0.0.1:порт/w/api.php Main
+class WikiApiStub implements AutoCloseable {
+    static final String PATH = "/w/api.php";
+
+    static {
+        // без TCP_NODELAY тело ответа, отправленное после заголовков, ждёт подтверждения
+        // заголовков (алгоритм Нейгла и отложенный ACK) и к каждому ответу добавляется до 40 мс
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private volatile int totalHits = 100;
+    private volatile long delayMillis;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile int retryAfterSeconds = -1;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile int extractsLimit = 20;
+
+    public WikiApiStub(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        WikiApiStub stub = new WikiApiStub(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        stub.start();
+        System.out.println("Заглушка API запущена: " + stub.getEndpoint());
+    }
+
+    public WikiApiStub start() {
+        server.start();
+        return this;
+    }
+
+    public URI getEndpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + PATH);
+    }
+
+    public void setTotalHits(int totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    // Задержка перед каждым ответом, как у удалённого сервера
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    // Следующие count запросов получат ответ status; для status 200 - ошибку API maxlag.
+    // retryAfterSeconds < 0 - без заголовка Retry-After
+    public void failNext(int count, int status, int retryAfterSeconds) {
+        this.failureStatus = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+        failures.set(count);
+    }
+
+    // Доля запросов от 0 до 1, на которые заглушка отвечает status без Retry-After
+    public void setErrorRate(double errorRate, int status) {
+        this.errorRate = errorRate;
+        this.errorStatus = status;
+    }
+
+    // Сколько вводных абзацев отдавать за один ответ; у настоящего API при exintro - 20
+    public void setExtractsLimit(int extractsLimit) {
+        this.extractsLimit = extractsLimit;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            requests.incrementAndGet();
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, errorStatus, "{\"error\":{\"code\":\"internal\",\"info\":\"random failure\"}}");
+            } else if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                if (retryAfterSeconds >= 0) {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                }
+                if (failureStatus == 200) {
+                    respond(exchange, 200, "{\"error\":{\"code\":\"maxlag\",\"info\":\"Waiting for a database server\",\"lag\":6}}");
+                } else {
+                    respond(exchange, failureStatus, "{\"error\":{\"code\":\"internal\",\"info\":\"injected failure\"}}");
+                }
+            } else if ("search".equals(parameters.get("list"))) {
+                respond(exchange, 200, searchResponse(parameters));
+            } else if ("extracts".equals(parameters.get("prop")) && parameters.containsKey("pageids")) {
+                respond(exchange, 200, extractsResponse(parameters));
+            } else {
+                respond(exchange, 400, "{\"error\":{\"code\":\"badparams\",\"info\":\"unsupported request\"}}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String searchResponse(Map<String, String> parameters) throws IOException {
+        String query = parameters.getOrDefault("srsearch", "");
+        int limit = Integer.parseInt(parameters.getOrDefault("srlimit", "10"));
+        int offset = Integer.parseInt(parameters.getOrDefault("sroffset", "0"));
+        int end = Math.min(totalHits, offset + limit);
+
+        StringWriter body = new StringWriter();
+        try (JsonWriter json = new JsonWriter(body)) {
+            json.beginObject();
+            json.name("batchcomplete").value("");
+            if (end < totalHits) {
+                json.name("continue").beginObject()
+                        .name("sroffset").value(end)
+                        .name("continue").value("-||")
+                        .endObject();
+            }
+            json.name("query").beginObject();
+            json.name("searchinfo").beginObject().name("totalhits").value(totalHits).endObject();
+            json.name("search").beginArray();
+            for (int i = offset; i < end; i++) {
+                json.beginObject()
+                        .name("ns").value(0)
+                        .name("title").value(query + " " + (i + 1))
+                        .name("pageid").value(pageId(query, i))
+                        .name("size").value(1000 + i * 37)
+                        .name("wordcount").value(150 + i * 5)
+                        .name("snippet").value("Статья <span class=\"searchmatch\">" + query + "</span> номер " + (i + 1))
+                        .name("timestamp").value("2024-01-01T00:00:00Z")
+                        .endObject();
+            }
+            json.endArray();
+            json.endObject();
+            json.endObject();
+        }
+        return body.toString();
+    }
+
+    // Формат formatversion=2: pages - массив. Как и настоящий API, отдаёт абзацы страниц начиная
+    // с excontinue, а если все не поместились, добавляет continue с номером следующей
+    private String extractsResponse(Map<String, String> parameters) throws IOException {
+        String[] pageIds = parameters.get("pageids").split("\\|");
+        int from = Integer.parseInt(parameters.getOrDefault("excontinue", "0"));
+        int end = Math.min(pageIds.length, from + extractsLimit);
+
+        StringWriter body = new StringWriter();
+        try (JsonWriter json = new JsonWriter(body)) {
+            json.beginObject();
+            if (end < pageIds.length) {
+                json.name("continue").beginObject()
+                        .name("excontinue").value(end)
+                        .name("continue").value("||")
+                        .endObject();
+            } else {
+                json.name("batchcomplete").value(true);
+            }
+            json.name("query").beginObject();
+            json.name("pages").beginArray();
+            for (int i = 0; i < pageIds.length; i++) {
+                String pageId = pageIds[i];
+                json.beginObject()
+                        .name("pageid").value(Integer.parseInt(pageId))
+                        .name("ns").value(0)
+                        .name("title").value("Страница " + pageId);
+                if (i >= from && i < end) {
+                    json.name("extract").value("Страница " + pageId + " - выдуманная статья заглушки API. "
+                            + "Её вводный абзац нужен, чтобы проверить показ описания в консоли.\n"
+                            + "Второй абзац описания.");
+                }
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+            json.endObject();
+        }
+        return body.toString();
+    }
+
+    static int pageId(String query, int index) {
+        return (query.hashCode() * 31 + index) & Integer.MAX_VALUE;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accepted != null && accepted.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+}
@@ -1,9 +1,5 @@
-import java.io.BufferedReader;                    // Для эффективного чтения текста
-import java.io.InputStreamReader;                 // Для чтения байтовых потоков как текста
 import java.io.IOException;                       // Для обработки ошибок ввода-вывода
-import java.net.HttpURLConnection;                // Для HTTP-соединений
 import java.net.URLEncoder;                       // Для кодирования URL (замены пробелов на %20 и т.д.)
-import java.net.URL;                              // Для работы с web-адресами
 import java.net.URI;                              // Для создания URI (нужен для открытия браузера)
 import java.awt.Desktop;                          // Для открытия браузера
 import java.util.Scanner;                         // Для чтения ввода пользователя с консоли
@@ -46,26 +42,12 @@ public class WikiSearch {
         currentQuery = query;                     // Сохраняем текущий запрос
         String encodedQuery = URLEncoder.encode(query, "UTF-8");  // Кодируем запрос для URL
 
-        // Формируем URL для запроса к API Википедии
-        String apiUrl = "https://ru.wikipedia.org/w/api.php?" +
-                "action=query&list=search&srsearch=" + encodedQuery +  // Параметры API //хотим выполнить запрос, хотим выполнить поиск, передача поискового запроса
+        // Формируем параметры запроса к API Википедии
+        String apiParameters = "action=query&list=search&srsearch=" + encodedQuery +  // Параметры API //хотим выполнить запрос, хотим выполнить поиск, передача поискового запроса
                 "&srlimit=10&utf8=&format=json";
 
-        URL url = new URL(apiUrl);                // Создаём объект URL из строки
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();  // Открываем соединение
-        conn.setRequestMethod("GET");             // Устанавливаем метод GET
-        conn.setRequestProperty("User-Agent", "WikiSearchApp/1.0 (https://example.com/; example123@gmail.com)");  // Устанавливаем заголовок User-Agent
-
-        // Читаем ответ от сервера
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
-        StringBuilder response = new StringBuilder();  // Создаём StringBuilder для накопления ответа
-        String line;
-        while ((line = in.readLine()) != null) {  // Читаем построчно пока не кончится ответ
-            response.append(line);                // Добавляем каждую строку в response
-        }
-        in.close();
-
-        String json = response.toString();       // Преобразуем StringBuilder в строку
+        // Отправляем запрос через общий HTTP-клиент: соединение с сервером переиспользуется между поисками
+        String json = WikiSearchClient.getDefault().get(apiParameters).join();
         JsonObject jsonResponse = JsonParser.parseString(json).getAsJsonObject();  // Парсим JSON
         JsonObject queryObj = jsonResponse.getAsJsonObject("query");  // Получаем объект "query"
         currentSearchResults = queryObj.getAsJsonArray("search");  // Получаем массив результатов поиска
@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+// Асинхронный клиент API поиска Википедии. Один HttpClient на всё приложение держит открытые
+// соединения (keep-alive, по HTTPS - HTTP/2 с несколькими запросами в одном соединении),
+// так что повторные запросы не платят за установку TCP и TLS, а параллельные не ждут друг друга.
+// Адрес API можно заменить через -Dwiki.endpoint, например на локальный WikiApiStub.
+// Ответ запрашивается сжатым и разбирается JsonReader прямо из потока: из него берутся только
+// query.search[].title и pageid, остальное пропускается без построения дерева JsonObject.
+// Время этапов каждого запроса, число запросов и ошибок собираются в SearchMetrics.
+class WikiSearchClient {
+    static final URI DEFAULT_ENDPOINT = URI.create("https://ru.wikipedia.org/w/api.php");
+    // правила Wikimedia требуют в User-Agent способ связаться с автором клиента
+    static final String USER_AGENT = "WikiSearchApp/1.0 (https://example.com/; example123@gmail.com)";
+    static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LAG_SECONDS = 5;
+    // больше вводных абзацев за один запрос API не отдаёт
+    static final int MAX_EXTRACTS = 20;
+
+    private static WikiSearchClient defaultClient;
+
+    private interface BodyReader<T> {
+        T read(InputStream body, long retryAfterMillis) throws IOException;
+    }
+
+    private final HttpClient http;
+    private final URI endpoint;
+    private final Duration requestTimeout;
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    public WikiSearchClient(URI endpoint) {
+        this(endpoint, Duration.ofSeconds(10), Duration.ofSeconds(30));
+    }
+
+    public WikiSearchClient(URI endpoint, Duration connectTimeout, Duration requestTimeout) {
+        this.endpoint = endpoint;
+        this.requestTimeout = requestTimeout;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public static synchronized WikiSearchClient getDefault() {
+        if (defaultClient == null) {
+            String endpoint = System.getProperty("wiki.endpoint");
+            defaultClient = new WikiSearchClient(endpoint != null ? URI.create(endpoint) : DEFAULT_ENDPOINT);
+            defaultClient.metrics.register();
+        }
+        return defaultClient;
+    }
+
+    public URI getEndpoint() {
+        return endpoint;
+    }
+
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    public CompletableFuture<WikiSearchResult> search(String query) {
+        return search(query, DEFAULT_LIMIT, 0);
+    }
+
+    // limit результатов начиная с offset; номер следующей страницы берётся из continue.sroffset ответа
+    // Ошибки - SearchException; maxlag просит сервер отказать, если реплики отстают, вместо медленного ответа
+    public CompletableFuture<WikiSearchResult> search(String query, int limit, int offset) {
+        String parameters = "action=query&list=search&srsearch=" + encode(query)
+                + "&srlimit=" + limit + (offset > 0 ? "&sroffset=" + offset : "") + "&maxlag=" + MAX_LAG_SECONDS
+                + "&utf8=&format=json";
+        return request(parameters, (body, retryAfterMillis) -> {
+            WikiSearchResult result = readSearch(query, json(body), retryAfterMillis);
+            result.setPaging(offset, limit, result.getNextOffset(), result.getTotalHits());
+            return result;
+        });
+    }
+
+    // Вводные абзацы статей простым текстом, не больше MAX_EXTRACTS статей одним вызовом.
+    // Если сервер отдал абзацы не всех статей (continue.excontinue), остальные догружаются
+    // следующими запросами. Статей, которых нет или для которых сервер так и не отдал абзац,
+    // в результате нет; у статьи без вводного абзаца - пустая строка
+    public CompletableFuture<Map<Integer, String>> extracts(List<Integer> pageIds) {
+        if (pageIds.size() > MAX_EXTRACTS) {
+            throw new IllegalArgumentException("не больше " + MAX_EXTRACTS + " статей за запрос");
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for (int pageId : pageIds) {
+            ids.append(ids.length() > 0 ? "|" : "").append(pageId);
+        }
+        String parameters = "action=query&prop=extracts&exintro=1&explaintext=1&exlimit=max&pageids=" + encode(ids.toString())
+                + "&maxlag=" + MAX_LAG_SECONDS + "&utf8=&format=json&formatversion=2";
+        CompletableFuture<Map<Integer, String>> result = new CompletableFuture<>();
+        extracts(parameters, "", new HashMap<>(), result);
+        return result;
+    }
+
+    // continuation - параметры из continue предыдущего ответа; отмена result отменяет текущий запрос
+    private void extracts(String parameters, String continuation, Map<Integer, String> found,
+                          CompletableFuture<Map<Integer, String>> result) {
+        int before = found.size();
+        CompletableFuture<String> page = request(parameters + continuation,
+                (body, retryAfterMillis) -> readExtracts(json(body), retryAfterMillis, found));
+        cancelling(page, result);
+        page.whenComplete((next, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (next.isEmpty() || found.size() == before) {
+                // ответ без новых абзацев - продолжение ни к чему бы не привело
+                result.complete(found);
+            } else if (!result.isDone()) {
+                extracts(parameters, next, found, result);
+            }
+        });
+    }
+
+    // Отмена derived отменяет и source: так отмена готового результата прерывает сам HTTP-запрос
+    static <T> CompletableFuture<T> cancelling(CompletableFuture<?> source, CompletableFuture<T> derived) {
+        derived.whenComplete((value, error) -> {
+            if (derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
+    }
+
+    // Тело ответа на GET с указанными параметрами целиком
+    public CompletableFuture<String> get(String parameters) {
+        return request(parameters, (body, retryAfterMillis) -> new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    // Запрос с разбором тела ответа и замером этапов. Ответ с кодом, отличным от 200, завершает
+    // future ошибкой SearchException, как и тело, которое не удалось разобрать
+    private <T> CompletableFuture<T> request(String parameters, BodyReader<T> reader) {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<InputStream>> exchange = send(parameters);
+        // отмена результата отменяет future самого sendAsync: отмена зависимой стадии
+        // до исходного future не доходит, и HTTP-обмен продолжался бы
+        CompletableFuture<T> result = cancelling(exchange, exchange.thenApply(httpResponse -> {
+            metrics.recordHeaders(System.nanoTime() - start);
+            checkStatus(httpResponse);
+
+            long parseStart = System.nanoTime();
+            try (InputStream body = body(httpResponse)) {
+                return reader.read(body, retryAfterMillis(httpResponse));
+            } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+                // о неожиданной структуре JsonReader сообщает через IllegalStateException и NumberFormatException
+                throw SearchException.malformedResponse(e.getMessage(), e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                metrics.recordParse(System.nanoTime() - parseStart);
+            }
+        }));
+        result.whenComplete((value, error) -> metrics.recordRequest(System.nanoTime() - start, error));
+        return result;
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> send(String parameters) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint + "?" + parameters))
+                .timeout(requestTimeout)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private static void checkStatus(HttpResponse<InputStream> response) {
+        if (response.statusCode() != 200) {
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                // тело ответа с ошибкой не нужно
+            }
+            throw SearchException.forStatus(response.statusCode(), retryAfterMillis(response));
+        }
+    }
+
+    private static JsonReader json(InputStream body) {
+        return new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+    // Распакованный поток тела ответа
+    private static InputStream body(HttpResponse<InputStream> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip")).orElse(false);
+        return gzip ? new GZIPInputStream(response.body(), 16 * 1024) : response.body();
+    }
+
+    // Retry-After в секундах; -1 - заголовка нет или он в формате даты
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After").map(value -> Long.parseLong(value.trim()) * 1000).orElse(-1L);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // {"continue": {"sroffset": ...}, "query": {"searchinfo": {"totalhits": ...}, "search": [{"title": ...,
+    // "pageid": ...}, ...]}, ...}; "error" - ответ с ошибкой API
+    private static WikiSearchResult readSearch(String query, JsonReader reader, long retryAfterMillis) throws IOException {
+        WikiSearchResult result = new WikiSearchResult(query);
+        boolean hasResults = false;
+        int nextOffset = -1;
+        int totalHits = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("query") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (field.equals("search")) {
+                        readItems(reader, result);
+                        hasResults = true;
+                    } else if (field.equals("searchinfo") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        totalHits = readIntField(reader, "totalhits", totalHits);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (name.equals("continue") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                nextOffset = readIntField(reader, "sroffset", nextOffset);
+            } else if (name.equals("error")) {
+                throw readError(reader, retryAfterMillis);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!hasResults) {
+            throw SearchException.malformedResponse("в ответе нет результатов поиска", null);
+        }
+        result.setPaging(0, result.getResults().size(), nextOffset, totalHits);
+        return result;
+    }
+
+    // Числовое поле объекта, остальные поля пропускаются
+    private static int readIntField(JsonReader reader, String field, int defaultValue) throws IOException {
+        int value = defaultValue;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field) && reader.peek() == JsonToken.NUMBER) {
+                value = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private static void readItems(JsonReader reader, WikiSearchResult result) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String title = null;
+            int pageId = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "title":
+                        title = reader.nextString();
+                        break;
+                    case "pageid":
+                        pageId = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (title != null) {
+                result.addResult(new SearchItems(title, pageId));
+            }
+        }
+        reader.endArray();
+    }
+
+    // {"continue": {"excontinue": ..., "continue": "||"}, "query": {"pages": [{"pageid": ..., "extract": ...},
+    // {"pageid": ..., "missing": true}, ...]}, ...}. Добавляет найденные абзацы в extracts и возвращает
+    // параметры продолжения ("&excontinue=...&continue=..."), "" - продолжения нет
+    private static String readExtracts(JsonReader reader, long retryAfterMillis, Map<Integer, String> extracts)
+            throws IOException {
+        StringBuilder continuation = new StringBuilder();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("continue") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String parameter = reader.nextName();
+                    if (reader.peek() == JsonToken.STRING || reader.peek() == JsonToken.NUMBER) {
+                        continuation.append('&').append(encode(parameter)).append('=').append(encode(reader.nextString()));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (name.equals("query") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("pages") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readPages(reader, extracts);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (name.equals("error")) {
+                throw readError(reader, retryAfterMillis);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return continuation.toString();
+    }
+
+    // Страницы без поля extract пропускаются: их абзац сервер отдаст в продолжении
+    private static void readPages(JsonReader reader, Map<Integer, String> extracts) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int pageId = 0;
+            String extract = null;
+            boolean missing = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "pageid":
+                        pageId = reader.nextInt();
+                        break;
+                    case "extract":
+                        extract = reader.nextString().trim();
+                        break;
+                    case "missing":
+                    case "invalid":
+                        missing = true;
+                        reader.skipValue();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (pageId > 0 && !missing && extract != null) {
+                extracts.put(pageId, extract);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static SearchException readError(JsonReader reader, long retryAfterMillis) throws IOException {
+        String code = "";
+        String info = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("code") && reader.peek() == JsonToken.STRING) {
+                code = reader.nextString();
+            } else if (name.equals("info") && reader.peek() == JsonToken.STRING) {
+                info = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return SearchException.forApiError(code, info, retryAfterMillis);
+    }
+}